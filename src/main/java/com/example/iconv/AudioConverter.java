@@ -1,60 +1,176 @@
 package com.example.iconv;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 
 public class AudioConverter {
 
+    private AudioOptions options = AudioOptions.original();
+
+    /**
+     * Sets the sample rate, channel count and bit depth of the output.
+     */
+    public void setOptions(AudioOptions options) {
+        this.options = options;
+    }
+
     public void convert(File inputFile, String outputFormat, File outputDir, Consumer<String> onProgress) throws IOException, InterruptedException {
+        convert(inputFile, outputFormat, outputDir, 0, onProgress);
+    }
+
+    /**
+     * @param threads The number of threads ffmpeg may use, or 0 to let ffmpeg decide.
+     */
+    public void convert(File inputFile, String outputFormat, File outputDir, int threads, Consumer<String> onProgress) throws IOException, InterruptedException {
+        convert(inputFile, outputFormat, outputDir, threads, onProgress, null);
+    }
+
+    /**
+     * @param onStatus Receives throttled progress updates with percent and ETA, or {@code null}.
+     *                 Messages go to {@code onProgress}; ffmpeg's own log is only passed on if it fails.
+     */
+    public void convert(File inputFile, String outputFormat, File outputDir, int threads, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
         if (!inputFile.exists()) {
             throw new IOException("Input file does not exist: " + inputFile.getAbsolutePath());
         }
-        if (!outputDir.exists()) {
-            if (!outputDir.mkdirs()) {
-                throw new IOException("Could not create output directory: " + outputDir.getAbsolutePath());
+        MediaFiles.createOutputDir(outputDir);
+
+        File outputFile = getOutputFile(inputFile, outputFormat, outputDir);
+
+        // Uncompressed audio is converted in-process; starting ffmpeg would take longer than the work
+        if (PcmAudioConverter.supportsFormat(outputFormat)) {
+            try {
+                if (new PcmAudioConverter(options).convert(inputFile, outputFormat, outputFile, onStatus)) {
+                    onProgress.accept("Converted " + inputFile.getName() + " without ffmpeg");
+                    return;
+                }
+            } catch (IOException e) {
+                onProgress.accept("Audio conversion failed: " + e.getMessage());
+                throw e;
             }
         }
 
         File ffmpegExecutable = FfmpegInstaller.ensureFfmpegInstalled(onProgress);
 
-        String fileName = inputFile.getName();
-        int dotIndex = fileName.lastIndexOf('.');
-        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
-        File outputFile = new File(outputDir, nameWithoutExtension + "." + outputFormat);
-
         List<String> command = new ArrayList<>();
         command.add(ffmpegExecutable.getAbsolutePath());
         command.add("-i");
         command.add(inputFile.getAbsolutePath());
         command.add("-y"); // Overwrite output file if it exists
+        if (threads > 0) {
+            command.add("-threads");
+            command.add(String.valueOf(threads));
+        }
+        addOutputArguments(command, outputFormat);
         command.add(outputFile.getAbsolutePath());
 
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
-
         onProgress.accept("Starting audio conversion for: " + inputFile.getName());
         onProgress.accept("Executing command: " + String.join(" ", command));
 
-        Process process = processBuilder.start();
+        try {
+            MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+            FfmpegRunner.run(command, (probe != null) ? probe.durationSeconds : -1, 0, 0, onProgress, onStatus);
+        } catch (IOException e) {
+            onProgress.accept("Audio conversion failed: " + e.getMessage());
+            throw e;
+        }
+        onProgress.accept("Audio conversion finished successfully!");
+    }
+
+    /**
+     * @return Whether the file is short enough to share an ffmpeg process with others, see {@link #convertBatch}.
+     */
+    public boolean isBatchable(File inputFile, String outputFormat) {
+        if (PcmAudioConverter.isLikelyInProcess(inputFile, outputFormat)) {
+            return false;
+        }
+        MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+        return probe != null && probe.durationSeconds > 0 && probe.durationSeconds <= FfmpegScheduler.SMALL_JOB_SECONDS;
+    }
+
+    /**
+     * Converts several files with one ffmpeg process that reads them all and writes one output per
+     * input. If any of them fails, every output of the batch is deleted and the call fails, so the
+     * caller can convert the files one by one instead.
+     *
+     * @param outputDirs The output directory of each input.
+     */
+    public void convertBatch(List<File> inputFiles, List<File> outputDirs, String outputFormat, int threads, Consumer<String> onProgress) throws IOException, InterruptedException {
+        File ffmpegExecutable = FfmpegInstaller.ensureFfmpegInstalled(onProgress);
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegExecutable.getAbsolutePath());
+        for (File inputFile : inputFiles) {
+            command.add("-i");
+            command.add(inputFile.getAbsolutePath());
+        }
+        command.add("-y");
+        List<File> outputFiles = new ArrayList<>();
+        for (int i = 0; i < inputFiles.size(); i++) {
+            File outputDir = outputDirs.get(i);
+            MediaFiles.createOutputDir(outputDir);
+            File outputFile = getOutputFile(inputFiles.get(i), outputFormat, outputDir);
+            outputFiles.add(outputFile);
+            command.add("-map");
+            command.add(i + ":a:0");
+            addOutputArguments(command, outputFormat);
+            if (threads > 0) {
+                // The encoders run side by side, so they share the thread budget
+                command.add("-threads");
+                command.add(String.valueOf(Math.max(1, threads / inputFiles.size())));
+            }
+            command.add(outputFile.getAbsolutePath());
+        }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                onProgress.accept(line);
+        onProgress.accept("Converting " + inputFiles.size() + " audio files in one ffmpeg process");
+        try {
+            FfmpegRunner.run(command, 0, 0, onProgress, null);
+        } catch (IOException e) {
+            // Outputs are written side by side, so none of them is known to be complete
+            for (File outputFile : outputFiles) {
+                Files.deleteIfExists(outputFile.toPath());
             }
+            throw e;
         }
+    }
 
-        int exitCode = process.waitFor();
+    private void addOutputArguments(List<String> command, String outputFormat) {
+        if (options.sampleRate > 0) {
+            command.add("-ar");
+            command.add(String.valueOf(options.sampleRate));
+        }
+        if (options.channels > 0) {
+            command.add("-ac");
+            command.add(String.valueOf(options.channels));
+        }
+        String pcmCodec = pcmCodec(outputFormat);
+        if (pcmCodec != null) {
+            command.add("-c:a");
+            command.add(pcmCodec);
+        }
+    }
 
-        if (exitCode == 0) {
-            onProgress.accept("Audio conversion finished successfully!");
-        } else {
-            onProgress.accept("Audio conversion failed with exit code: " + exitCode);
+    // The PCM encoder for the bit depth, for the formats the bit depth applies to
+    private String pcmCodec(String outputFormat) {
+        if (options.bitDepth <= 0 || !PcmAudioConverter.supportsFormat(outputFormat)) {
+            return null;
         }
+        if (options.bitDepth == 8) {
+            return outputFormat.equalsIgnoreCase("wav") ? "pcm_u8" : "pcm_s8";
+        }
+        return "pcm_s" + options.bitDepth + (outputFormat.equalsIgnoreCase("wav") ? "le" : "be");
+    }
+
+    /**
+     * @return The file {@link #convert} writes for the given input.
+     */
+    public File getOutputFile(File inputFile, String outputFormat, File outputDir) {
+        String fileName = inputFile.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
+        return new File(outputDir, nameWithoutExtension + "." + outputFormat);
     }
 }
@@ -0,0 +1,29 @@
+package com.example.iconv;
+
+/**
+ * Sample rate, channel count and bit depth of converted audio. Each is 0 to keep the input's.
+ */
+public class AudioOptions {
+
+    public final int sampleRate;
+    public final int channels;
+    // Only applies to uncompressed formats; lossy codecs choose their own sample format
+    public final int bitDepth;
+
+    public AudioOptions(int sampleRate, int channels, int bitDepth) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitDepth = bitDepth;
+    }
+
+    public static AudioOptions original() {
+        return new AudioOptions(0, 0, 0);
+    }
+
+    @Override
+    public String toString() {
+        return ((sampleRate > 0) ? sampleRate + "Hz" : "original rate") + " "
+                + ((channels > 0) ? channels + "ch" : "original channels") + " "
+                + ((bitDepth > 0) ? bitDepth + "bit" : "original depth");
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Encodes the video of one long input in several ffmpeg processes at once, so a single file can use
+ * all cores even with encoders that scale poorly on their own.
+ * <p>
+ * The video stream is cut at keyframes into chunks by the segment muxer without re-encoding, the
+ * chunks are encoded concurrently on an {@link FfmpegScheduler}, and the encoded chunks are joined
+ * losslessly with the concat demuxer. Audio is encoded once from the whole input alongside the chunks
+ * and muxed in at the end, so there are no gaps or encoder delay at the chunk boundaries. Subtitles,
+ * chapters and container metadata are taken from the input when joining, as a regular conversion
+ * keeps them.
+ */
+public class ChunkedVideoEncoder {
+
+    // Shorter chunks spend more time starting ffmpeg and filling the encoder than encoding
+    private static final double MIN_CHUNK_SECONDS = 20;
+    // Chunks per parallel process, so one slow chunk doesn't leave the other processes idle at the end
+    private static final int CHUNKS_PER_SLOT = 2;
+    // Attempts per chunk before the conversion fails
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final File ffmpegExecutable;
+    private final FfmpegScheduler scheduler;
+
+    /**
+     * @param threadBudget The total number of threads the chunk processes may use together.
+     */
+    public ChunkedVideoEncoder(File ffmpegExecutable, int threadBudget) {
+        this.ffmpegExecutable = ffmpegExecutable;
+        this.scheduler = new FfmpegScheduler(FfmpegScheduler.Mode.THROUGHPUT, threadBudget);
+    }
+
+    /**
+     * @return Whether the input is long enough, and the thread budget large enough, for chunks to pay off.
+     */
+    public boolean isWorthwhile(MediaProbe probe) {
+        return probe.hasStreamOfType("video") && chunkCount(probe.durationSeconds) > 1;
+    }
+
+    private int chunkCount(double durationSeconds) {
+        int slots = scheduler.slotCount(Integer.MAX_VALUE);
+        if (slots < 2 || durationSeconds <= 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(slots * CHUNKS_PER_SLOT, Math.floor(durationSeconds / MIN_CHUNK_SECONDS)));
+    }
+
+    /**
+     * Encodes {@code inputFile} into {@code outputFile}, whose extension selects the encoders as in a
+     * regular conversion. Streams the plan copies are copied; its video part is ignored, since copied
+     * video needs no chunking.
+     */
+    public void encode(File inputFile, MediaProbe probe, File outputFile, StreamCopyPlan plan, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        String extension = outputFile.getName().substring(outputFile.getName().lastIndexOf('.') + 1);
+        // Next to the output, which is on a disk with room for a copy of the video
+        File workDir = Files.createTempDirectory(outputFile.getAbsoluteFile().getParentFile().toPath(), ".iconv-chunks-").toFile();
+        try {
+            List<File> sources = split(inputFile, probe.durationSeconds, workDir, onProgress);
+            onProgress.accept("Encoding " + inputFile.getName() + " in " + sources.size() + " chunks");
+
+            ChunkProgress progress = new ChunkProgress(probe.durationSeconds, onStatus);
+            List<FfmpegScheduler.Job> jobs = new ArrayList<>();
+            List<File> encoded = new ArrayList<>();
+            File audioFile = null;
+            if (probe.hasStreamOfType("audio")) {
+                // The longest job, so it starts first
+                File audio = new File(workDir, "audio." + extension);
+                audioFile = audio;
+                jobs.add(new FfmpegScheduler.Job(inputFile, workDir, threads -> {
+                    List<String> command = command(inputFile, threads);
+                    command.addAll(List.of("-vn", "-sn", "-dn"));
+                    if (plan.copyAudio) {
+                        command.addAll(List.of("-c:a", "copy"));
+                    }
+                    command.add(audio.getAbsolutePath());
+                    runWithRetry("Audio", command, audio, onProgress, null);
+                }));
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                File source = sources.get(i);
+                File chunk = new File(workDir, "chunk_" + String.format("%04d", i) + "." + extension);
+                encoded.add(chunk);
+                int chunkIndex = i;
+                jobs.add(new FfmpegScheduler.Job(source, workDir, threads -> {
+                    List<String> command = command(source, threads);
+                    command.addAll(List.of("-an", "-sn", "-dn"));
+                    command.add(chunk.getAbsolutePath());
+                    runWithRetry("Chunk " + (chunkIndex + 1), command, chunk, onProgress,
+                            status -> progress.update(chunkIndex, status));
+                }));
+            }
+
+            AtomicReference<Exception> firstError = new AtomicReference<>();
+            scheduler.runAll(jobs, new FfmpegScheduler.Listener() {
+                @Override
+                public void onJobStarted(File file, int threads) {
+                }
+
+                @Override
+                public void onJobFinished(File file, File outputDir, Exception error, int completed, int total) {
+                    if (error != null) {
+                        firstError.compareAndSet(null, error);
+                    }
+                }
+            });
+            Exception error = firstError.get();
+            if (error instanceof InterruptedException) {
+                throw (InterruptedException) error;
+            }
+            if (error != null) {
+                throw (error instanceof IOException) ? (IOException) error : new IOException(error.getMessage(), error);
+            }
+
+            join(inputFile, probe.hasStreamOfType("subtitle"), encoded, audioFile, outputFile, workDir, onProgress);
+            if (onStatus != null) {
+                onStatus.accept(new FfmpegProgress(probe.durationSeconds, probe.durationSeconds, 0, 0, true));
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    /**
+     * Cuts the video stream into chunks of roughly equal length without re-encoding; each cut is made
+     * at the first keyframe after the requested time.
+     */
+    private List<File> split(File inputFile, double durationSeconds, File workDir, Consumer<String> onProgress) throws IOException, InterruptedException {
+        double chunkSeconds = durationSeconds / chunkCount(durationSeconds);
+        List<String> command = command(inputFile, 0);
+        command.addAll(List.of("-map", "0:v:0", "-c", "copy",
+                "-f", "segment", "-segment_time", String.format(Locale.ROOT, "%.3f", chunkSeconds),
+                "-reset_timestamps", "1",
+                new File(workDir, "source_%04d.mkv").getAbsolutePath()));
+        FfmpegRunner.run(command, 0, 0, onProgress, null);
+
+        File[] sources = workDir.listFiles((dir, name) -> name.startsWith("source_"));
+        if (sources == null || sources.length == 0) {
+            throw new IOException("Splitting " + inputFile.getName() + " produced no chunks");
+        }
+        Arrays.sort(sources);
+        return Arrays.asList(sources);
+    }
+
+    private void join(File inputFile, boolean subtitles, List<File> chunks, File audioFile, File outputFile, File workDir, Consumer<String> onProgress) throws IOException, InterruptedException {
+        File list = new File(workDir, "chunks.txt");
+        try (Writer writer = Files.newBufferedWriter(list.toPath(), StandardCharsets.UTF_8)) {
+            for (File chunk : chunks) {
+                // Single quotes are escaped by closing the quote, adding an escaped quote and reopening it
+                writer.write("file '" + chunk.getAbsolutePath().replace("'", "'\\''") + "'\n");
+            }
+        }
+        onProgress.accept("Joining " + chunks.size() + " chunks into " + outputFile.getName());
+        if (subtitles) {
+            try {
+                FfmpegRunner.run(joinCommand(inputFile, true, list, audioFile, outputFile), 0, 0, onProgress, null);
+                return;
+            } catch (IOException e) {
+                // e.g. bitmap subtitles into MP4; a regular conversion leaves those out as well
+                onProgress.accept("Could not keep the subtitles (" + e.getMessage() + "), joining without them");
+                Files.deleteIfExists(outputFile.toPath());
+            }
+        }
+        FfmpegRunner.run(joinCommand(inputFile, false, list, audioFile, outputFile), 0, 0, onProgress, null);
+    }
+
+    private List<String> joinCommand(File inputFile, boolean subtitles, File list, File audioFile, File outputFile) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegExecutable.getAbsolutePath());
+        command.addAll(List.of("-f", "concat", "-safe", "0", "-i", list.getAbsolutePath()));
+        if (audioFile != null) {
+            command.addAll(List.of("-i", audioFile.getAbsolutePath()));
+        }
+        // The input itself, for what the chunks and the audio file don't carry
+        String source = (audioFile != null) ? "2" : "1";
+        command.addAll(List.of("-i", inputFile.getAbsolutePath()));
+        command.addAll(List.of("-y", "-map", "0:v"));
+        if (audioFile != null) {
+            command.addAll(List.of("-map", "1:a"));
+        }
+        if (subtitles) {
+            // Converted to the container's subtitle format like in a regular conversion
+            command.addAll(List.of("-map", source + ":s?"));
+        }
+        command.addAll(List.of("-map_metadata", source, "-map_chapters", source, "-c:v", "copy", "-c:a", "copy",
+                outputFile.getAbsolutePath()));
+        return command;
+    }
+
+    private List<String> command(File input, int threads) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegExecutable.getAbsolutePath());
+        command.add("-i");
+        command.add(input.getAbsolutePath());
+        command.add("-y");
+        if (threads > 0) {
+            command.add("-threads");
+            command.add(String.valueOf(threads));
+        }
+        return command;
+    }
+
+    private static void runWithRetry(String name, List<String> command, File output, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                FfmpegRunner.run(command, 0, 0, onProgress, onStatus);
+                return;
+            } catch (IOException e) {
+                Files.deleteIfExists(output.toPath());
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new IOException(name + " failed after " + MAX_ATTEMPTS + " attempts: " + e.getMessage(), e);
+                }
+                onProgress.accept(name + " failed (" + e.getMessage() + "), retrying");
+            }
+        }
+    }
+
+    private static void deleteRecursively(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // Sums the encoded time of all chunks into progress for the whole file
+    private static class ChunkProgress {
+        private final double durationSeconds;
+        private final Consumer<FfmpegProgress> listener;
+        private final Map<Integer, FfmpegProgress> chunks = new ConcurrentHashMap<>();
+        private final AtomicLong lastReport = new AtomicLong();
+
+        ChunkProgress(double durationSeconds, Consumer<FfmpegProgress> listener) {
+            this.durationSeconds = durationSeconds;
+            this.listener = listener;
+        }
+
+        void update(int chunk, FfmpegProgress progress) {
+            if (listener == null) {
+                return;
+            }
+            chunks.put(chunk, progress);
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            // Every chunk reports on its own schedule; pass on at most one combined update per interval
+            if (now - last < FfmpegProgressParser.DEFAULT_MIN_INTERVAL_MILLIS || !lastReport.compareAndSet(last, now)) {
+                return;
+            }
+            double outTime = 0;
+            double speed = 0;
+            double fps = 0;
+            for (FfmpegProgress chunkProgress : chunks.values()) {
+                outTime += chunkProgress.outTimeSeconds;
+                if (!chunkProgress.done) {
+                    speed += chunkProgress.speed;
+                    fps += chunkProgress.fps;
+                }
+            }
+            listener.accept(new FfmpegProgress(Math.min(outTime, durationSeconds), durationSeconds, fps, speed, false));
+        }
+    }
+}
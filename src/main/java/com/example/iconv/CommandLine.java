@@ -0,0 +1,857 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Headless batch mode, e.g. {@code iconv image -f jpg -o out --width 800 --height 600 photos/}.
+ * <p>
+ * Runs the same converters as the UI without touching Swing, so it works on machines without a display
+ * and starts quickly. Human-readable output goes to stderr; with {@code --json -} stdout carries only
+ * the JSON summary. The exit code tells scripts whether everything succeeded.
+ */
+public class CommandLine {
+
+    public static final int EXIT_OK = 0;
+    // At least one file failed
+    public static final int EXIT_FAILURES = 1;
+    public static final int EXIT_USAGE = 2;
+    // No input matched
+    public static final int EXIT_NO_INPUT = 3;
+    public static final int EXIT_INTERRUPTED = 130;
+
+    private static final Set<String> COMMANDS = Set.of("image", "video", "audio", "download");
+    // Output lines kept per file to explain a failure when not running verbosely
+    private static final int FAILURE_TAIL_LINES = 20;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: iconv <image|video|audio|download> [options] <inputs...>",
+            "",
+            "Inputs are files, directories (searched recursively) or glob patterns such as 'photos/**.jpg';",
+            "for download, they are URLs.",
+            "",
+            "Common options:",
+            "  -o, --output DIR       Output directory (required); folder structure is mirrored below it",
+            "  -f, --format FMT       Output format (default: png, mp4 or mp3); for video, a list such as",
+            "                         mp4,webm,gif,mp3 creates all of them from a single decode",
+            "  -j, --jobs N           Worker threads for images, or the ffmpeg thread budget (default: cores)",
+            "  --incremental          Skip files converted before with the same settings",
+            "  --hash                 With --incremental, compare contents of touched files before reconverting",
+            "  --json FILE            Write a JSON summary with per-file timings; '-' for stdout",
+            "  -v, --verbose          Print converter output",
+            "  -q, --quiet            Only print failures",
+            "",
+            "image:    --width W --height H  --filter bilinear|bicubic|lanczos  --stream  --tile-budget MB",
+            "video:    --start TIME --end TIME  --trim fast|accurate  --gif  --no-copy (always re-encode)",
+            "          --gif-fps N  --gif-width W  --dither sierra|floyd_steinberg|bayer|none",
+            "          --chunked (split long videos across cores)  --mode throughput|latency",
+            "audio:    --rate HZ  --channels N  --bits 8|16|24|32  --mode throughput|latency",
+            "download: --audio  --quality best|1080p|720p|480p  --per-site N (default 2)",
+            "          --fragments N (parallel fragments of streamed videos, default 4)",
+            "          -j N is the number of downloads at once (default 4); playlists are expanded",
+            "          --resume (also finish downloads interrupted last time; then no URLs are needed)",
+            "          --convert FMT (convert each file as soon as it is downloaded, e.g. mp4 or flac)",
+            "          --convert-jobs N (conversions at once while downloading, default 2)",
+            "          Downloads finished before are skipped, see ~/.iconv/downloads.journal",
+            "",
+            "Exit codes: 0 success, 1 some files failed, 2 usage error, 3 no inputs, 130 interrupted.");
+
+    private static class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Options {
+        String command;
+        File outputDir;
+        String format;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean incremental;
+        boolean contentHashing;
+        String json;
+        boolean verbose;
+        boolean quiet;
+        int width;
+        int height;
+        ImageResizer.Filter filter = ImageResizer.Filter.LANCZOS;
+        boolean streaming;
+        long tileBudgetBytes = ImageConverter.DEFAULT_TILE_BUDGET_BYTES;
+        String startTime = "";
+        String endTime = "";
+        boolean createGif;
+        boolean streamCopy = true;
+        VideoConverter.TrimMode trimMode = VideoConverter.TrimMode.ACCURATE;
+        boolean chunked;
+        int gifFps = GifOptions.DEFAULT_FPS;
+        int gifWidth = GifOptions.DEFAULT_WIDTH;
+        GifOptions.Dither dither = GifOptions.Dither.SIERRA;
+        FfmpegScheduler.Mode mode = FfmpegScheduler.Mode.THROUGHPUT;
+        int sampleRate;
+        int channels;
+        int bitDepth;
+        boolean jobsGiven;
+        boolean audioOnly;
+        String quality = "Best";
+        int perHost = DownloadQueue.DEFAULT_PER_HOST_LIMIT;
+        int fragments = 4;
+        boolean resume;
+        String convertFormat;
+        int convertJobs = DownloadConversion.DEFAULT_CONCURRENCY;
+        final List<String> inputs = new ArrayList<>();
+    }
+
+    // The outcome of one input, reported in the JSON summary
+    private static class FileResult {
+        final String input;
+        final String output;
+        final String status;
+        final long millis;
+        final String error;
+
+        FileResult(String input, String output, String status, long millis, String error) {
+            this.input = input;
+            this.output = output;
+            this.status = status;
+            this.millis = millis;
+            this.error = error;
+        }
+    }
+
+    // Keeps the last lines a job printed, to show them if it fails
+    private static class MessageTail implements Consumer<String> {
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+
+        @Override
+        public synchronized void accept(String line) {
+            if (lines.size() == FAILURE_TAIL_LINES) {
+                lines.removeFirst();
+            }
+            lines.addLast(line);
+        }
+
+        synchronized List<String> lines() {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final List<FileResult> results = new ArrayList<>();
+    private Options options;
+
+    public CommandLine(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * @return Whether the arguments ask for the command-line mode rather than the UI.
+     */
+    public static boolean isCommand(String[] args) {
+        return args.length > 0 && (COMMANDS.contains(args[0]) || args[0].equals("-h") || args[0].equals("--help"));
+    }
+
+    /**
+     * @return The process exit code.
+     */
+    public int run(String[] args) {
+        try {
+            options = parse(args);
+        } catch (UsageException e) {
+            err.println("iconv: " + e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (options == null) {
+            out.println(USAGE);
+            return EXIT_OK;
+        }
+        if (options.quiet) {
+            // The converters report each file with System.out
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        } else if ("-".equals(options.json)) {
+            // Keep stdout clean for the summary
+            System.setOut(err);
+        }
+
+        long started = System.nanoTime();
+        int exitCode;
+        try {
+            exitCode = execute();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("iconv: interrupted");
+            exitCode = EXIT_INTERRUPTED;
+        } catch (IOException e) {
+            err.println("iconv: " + e.getMessage());
+            exitCode = EXIT_FAILURES;
+        }
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        if (options.json != null) {
+            try {
+                writeJson(exitCode, elapsedMillis);
+            } catch (IOException e) {
+                err.println("iconv: could not write JSON summary: " + e.getMessage());
+                if (exitCode == EXIT_OK) {
+                    exitCode = EXIT_FAILURES;
+                }
+            }
+        }
+        return exitCode;
+    }
+
+    private int execute() throws IOException, InterruptedException {
+        if (options.command.equals("download")) {
+            return download();
+        }
+        List<FileItem> items = MediaFiles.expand(options.inputs, options.command);
+        if (items.isEmpty()) {
+            err.println("iconv: no " + options.command + " files found in the given inputs");
+            return EXIT_NO_INPUT;
+        }
+        ConversionManifest manifest = null;
+        if (options.incremental) {
+            manifest = ConversionManifest.load(ConversionManifest.defaultFile());
+            manifest.setContentHashing(options.contentHashing);
+        }
+        try {
+            switch (options.command) {
+                case MediaFiles.IMAGE:
+                    return convertImages(items, manifest);
+                case MediaFiles.VIDEO:
+                    return convertWithFfmpeg(items, manifest, true);
+                default:
+                    return convertWithFfmpeg(items, manifest, false);
+            }
+        } finally {
+            if (manifest != null) {
+                manifest.save();
+            }
+        }
+    }
+
+    private int convertImages(List<FileItem> items, ConversionManifest manifest) throws InterruptedException {
+        ImageConverter converter = new ImageConverter();
+        converter.setStreamingForced(options.streaming);
+        converter.setTileBudgetBytes(options.tileBudgetBytes);
+        String parameters = ConversionManifest.imageParameters(options.format, options.width, options.height, options.filter);
+
+        List<ImageBatchConverter.Task> tasks = new ArrayList<>();
+        Map<File, File> outputFiles = new HashMap<>();
+        for (FileItem item : items) {
+            File targetDir = item.mirroredOutputDir(options.outputDir);
+            File outputFile = converter.getOutputFile(item.file, options.format, targetDir);
+            if (isUpToDate(manifest, item.file, outputFile, parameters)) {
+                skipped(item.file, outputFile);
+                continue;
+            }
+            outputFiles.put(item.file, outputFile);
+            tasks.add(new ImageBatchConverter.Task(item.file, targetDir));
+        }
+
+        Map<File, Long> startTimes = new ConcurrentHashMap<>();
+        ImageBatchConverter.Result result = new ImageBatchConverter(converter, options.jobs).convertAll(tasks, options.format,
+                options.width, options.height, options.filter, new ImageBatchConverter.Listener() {
+                    @Override
+                    public void onFileStarted(File inputFile) {
+                        startTimes.put(inputFile, System.nanoTime());
+                    }
+
+                    @Override
+                    public void onFileFinished(File inputFile, File outputDir, Exception error, int completed, int total) {
+                        File outputFile = outputFiles.get(inputFile);
+                        if (error == null && manifest != null) {
+                            record(manifest, inputFile, outputFile, parameters);
+                        }
+                        finished(inputFile, outputFile, startTimes.remove(inputFile), error, List.of(), completed, total);
+                    }
+                });
+        return exitCode(result.failureCount);
+    }
+
+    private int convertWithFfmpeg(List<FileItem> items, ConversionManifest manifest, boolean video) throws InterruptedException {
+        VideoConverter videoConverter = new VideoConverter();
+        videoConverter.setStreamCopyEnabled(options.streamCopy);
+        videoConverter.setTrimMode(options.trimMode);
+        videoConverter.setChunkedEncoding(options.chunked);
+        GifOptions gifOptions = new GifOptions(options.gifFps, options.gifWidth, options.dither);
+        videoConverter.setGifOptions(gifOptions);
+        AudioConverter audioConverter = new AudioConverter();
+        AudioOptions audioOptions = new AudioOptions(options.sampleRate, options.channels, options.bitDepth);
+        audioConverter.setOptions(audioOptions);
+        List<String> formats = video ? videoFormats() : List.of(options.format);
+        boolean gif = formats.contains(VideoConverter.GIF_FORMAT);
+        String parameters = video
+                ? ConversionManifest.videoParameters(String.join(",", formats), options.startTime, options.endTime, gif ? gifOptions : null, options.streamCopy, options.trimMode)
+                : ConversionManifest.audioParameters(options.format, audioOptions);
+
+        List<FfmpegScheduler.Job> jobs = new ArrayList<>();
+        Map<File, List<File>> outputFiles = new HashMap<>();
+        Map<File, MessageTail> messages = new HashMap<>();
+        for (FileItem item : items) {
+            File targetDir = item.mirroredOutputDir(options.outputDir);
+            List<File> itemOutputs = video
+                    ? videoConverter.getOutputFiles(item.file, formats, targetDir)
+                    : List.of(audioConverter.getOutputFile(item.file, options.format, targetDir));
+            if (isUpToDate(manifest, item.file, itemOutputs, parameters)) {
+                skipped(item.file, itemOutputs);
+                continue;
+            }
+            outputFiles.put(item.file, itemOutputs);
+            MessageTail tail = new MessageTail();
+            messages.put(item.file, tail);
+            Consumer<String> onProgress = options.verbose ? prefixed(item.file).andThen(tail) : tail;
+            jobs.add(new FfmpegScheduler.Job(item.file, targetDir, threads -> {
+                if (video) {
+                    videoConverter.convertToFormats(item.file, formats, targetDir, options.startTime, options.endTime, threads, onProgress, null);
+                } else {
+                    audioConverter.convert(item.file, options.format, targetDir, threads, onProgress);
+                }
+            }));
+        }
+
+        // Durations and frame sizes let the longest files start first and the short ones share processes
+        File ffmpegExecutable = FfmpegInstaller.findInstalledFfmpeg();
+        if (ffmpegExecutable != null) {
+            MediaProbeCache.shared().prefetch(ffmpegExecutable, new ArrayList<>(outputFiles.keySet()), options.jobs);
+        }
+        jobs = video
+                ? JobCostModel.shared().withEstimates(jobs, "video " + String.join(",", formats),
+                        probe -> videoConverter.costVariant(probe, formats, options.startTime, options.endTime))
+                : JobCostModel.shared().withEstimates(jobs, "audio " + options.format);
+
+        FfmpegScheduler scheduler = new FfmpegScheduler(options.mode, options.jobs);
+        // Short files share ffmpeg processes; a failed batch is converted file by file
+        Consumer<String> batchLog = options.verbose ? line -> err.println("[batch] " + line) : line -> { };
+        scheduler.setBatching((batch, threads) -> {
+            List<File> inputFiles = new ArrayList<>();
+            List<File> outputDirs = new ArrayList<>();
+            for (FfmpegScheduler.Job job : batch) {
+                inputFiles.add(job.inputFile);
+                outputDirs.add(job.outputDir);
+            }
+            if (video) {
+                videoConverter.convertBatch(inputFiles, outputDirs, formats.get(0), options.startTime, options.endTime, threads, batchLog);
+            } else {
+                audioConverter.convertBatch(inputFiles, outputDirs, options.format, threads, batchLog);
+            }
+        }, job -> video ? videoConverter.isBatchable(job.inputFile, formats) : audioConverter.isBatchable(job.inputFile, options.format),
+                FfmpegScheduler.DEFAULT_MAX_BATCH_SIZE);
+
+        Map<File, Long> startTimes = new ConcurrentHashMap<>();
+        FfmpegScheduler.Result result = scheduler.runAll(jobs, new FfmpegScheduler.Listener() {
+            @Override
+            public void onJobStarted(File inputFile, int threads) {
+                startTimes.put(inputFile, System.nanoTime());
+            }
+
+            @Override
+            public void onJobFinished(File inputFile, File outputDir, Exception error, int completed, int total) {
+                List<File> itemOutputs = outputFiles.get(inputFile);
+                if (error == null && manifest != null) {
+                    itemOutputs.forEach(outputFile -> record(manifest, inputFile, outputFile, parameters));
+                }
+                report(inputFile.getPath(), paths(itemOutputs), started(startTimes.remove(inputFile)), error, messages.get(inputFile).lines(), completed, total);
+            }
+        });
+        try {
+            MediaProbeCache.shared().save();
+        } catch (IOException e) {
+            err.println("iconv: could not save the media probe cache: " + e.getMessage());
+        }
+        try {
+            JobCostModel.shared().save();
+        } catch (IOException e) {
+            err.println("iconv: could not save the job cost model: " + e.getMessage());
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        return exitCode(result.failureCount);
+    }
+
+    private int download() throws InterruptedException {
+        Downloader downloader = new Downloader();
+        downloader.setConcurrentFragments(options.fragments);
+        downloader.setDownloadArchiveDir(DownloadJournal.defaultArchiveDir());
+        // -j counts downloads here; the core count says nothing about bandwidth
+        int concurrent = options.jobsGiven ? options.jobs : DownloadQueue.DEFAULT_MAX_CONCURRENT;
+        DownloadQueue queue = new DownloadQueue(downloader, concurrent, options.perHost);
+        DownloadJournal journal = DownloadJournal.shared();
+        queue.setJournal(journal);
+        if (options.convertFormat != null) {
+            // Converts while the next videos download instead of after all of them
+            queue.setPostProcessor(new DownloadConversion(options.convertFormat, options.convertJobs), options.convertJobs);
+        }
+
+        int failureCount = 0;
+        if (options.resume) {
+            // One run per folder and settings, in the order they were queued
+            Map<String, List<DownloadJournal.Entry>> groups = new LinkedHashMap<>();
+            for (DownloadJournal.Entry entry : journal.unfinished()) {
+                groups.computeIfAbsent(entry.outputDir + "|" + entry.extractAudio + "|" + entry.quality, key -> new ArrayList<>()).add(entry);
+            }
+            if (!options.quiet) {
+                err.println("Resuming " + groups.values().stream().mapToInt(List::size).sum() + " unfinished download(s).");
+            }
+            for (List<DownloadJournal.Entry> group : groups.values()) {
+                List<String> urls = new ArrayList<>();
+                group.forEach(entry -> urls.add(entry.url));
+                DownloadJournal.Entry first = group.get(0);
+                failureCount += download(queue, DownloadQueue.items(urls), first.outputDir, first.extractAudio, first.quality);
+            }
+        }
+        if (!options.inputs.isEmpty()) {
+            List<DownloadQueue.Item> items = queue.expand(options.inputs, options.outputDir, options.audioOnly, options.quality, options.verbose ? err::println : line -> { });
+            failureCount += download(queue, items, options.outputDir, options.audioOnly, options.quality);
+        }
+        return exitCode(failureCount);
+    }
+
+    /**
+     * @return The number of failed downloads.
+     */
+    private int download(DownloadQueue queue, List<DownloadQueue.Item> items, File outputDir, boolean audioOnly, String quality) throws InterruptedException {
+        Map<DownloadQueue.Item, MessageTail> messages = new ConcurrentHashMap<>();
+        Map<DownloadQueue.Item, Long> startTimes = new ConcurrentHashMap<>();
+        DownloadQueue.Result result = queue.runAll(items, outputDir, audioOnly, quality, item -> {
+            MessageTail tail = messages.computeIfAbsent(item, key -> new MessageTail());
+            return options.verbose ? tail.andThen(line -> err.println("[" + item.url + "] " + line)) : tail;
+        }, new DownloadQueue.Listener() {
+            @Override
+            public void onItemStarted(DownloadQueue.Item item) {
+                startTimes.put(item, System.nanoTime());
+            }
+
+            @Override
+            public void onItemConverting(DownloadQueue.Item item) {
+                if (options.verbose) {
+                    err.println("[" + item.url + "] converting to " + options.convertFormat);
+                }
+            }
+
+            @Override
+            public void onItemProgress(DownloadQueue.Item item, DownloadProgress progress) {
+                if (options.verbose) {
+                    err.println("[" + item.url + "] " + progress);
+                }
+            }
+
+            @Override
+            public void onItemFinished(DownloadQueue.Item item, Exception error, int completed, int total) {
+                if (item.getState() == DownloadQueue.State.SKIPPED) {
+                    skipped(item.url, outputDir.getPath());
+                    return;
+                }
+                MessageTail tail = messages.get(item);
+                report(item.url, outputDir.getPath(), started(startTimes.remove(item)), error,
+                        (tail != null) ? tail.lines() : List.of(), completed, total);
+            }
+        });
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        return result.failureCount;
+    }
+
+    private boolean isUpToDate(ConversionManifest manifest, File inputFile, File outputFile, String parameters) {
+        if (manifest == null) {
+            return false;
+        }
+        try {
+            return manifest.isUpToDate(inputFile, outputFile, parameters);
+        } catch (IOException e) {
+            // Reconvert when in doubt
+            return false;
+        }
+    }
+
+    private boolean isUpToDate(ConversionManifest manifest, File inputFile, List<File> outputFiles, String parameters) {
+        for (File outputFile : outputFiles) {
+            if (!isUpToDate(manifest, inputFile, outputFile, parameters)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(ConversionManifest manifest, File inputFile, File outputFile, String parameters) {
+        try {
+            manifest.record(inputFile, outputFile, parameters);
+        } catch (IOException e) {
+            err.println("iconv: could not record " + inputFile + " in the conversion manifest: " + e.getMessage());
+        }
+    }
+
+    private void skipped(File inputFile, File outputFile) {
+        skipped(inputFile.getPath(), outputFile.getPath());
+    }
+
+    private synchronized void skipped(String input, String output) {
+        results.add(new FileResult(input, output, "skipped", 0, null));
+        if (!options.quiet) {
+            err.println("[skipped] " + input);
+        }
+    }
+
+    private synchronized void skipped(File inputFile, List<File> outputFiles) {
+        results.add(new FileResult(inputFile.getPath(), paths(outputFiles), "skipped", 0, null));
+        if (!options.quiet) {
+            err.println("[skipped] " + inputFile.getPath());
+        }
+    }
+
+    private void finished(File inputFile, File outputFile, Long startedNanos, Exception error, List<String> tail, int completed, int total) {
+        report(inputFile.getPath(), (outputFile != null) ? outputFile.getPath() : null, started(startedNanos), error, tail, completed, total);
+    }
+
+    private static long started(Long startedNanos) {
+        return (startedNanos != null) ? startedNanos : System.nanoTime();
+    }
+
+    // Several outputs of one input are reported as a single comma-separated string
+    private static String paths(List<File> files) {
+        List<String> paths = new ArrayList<>();
+        for (File file : files) {
+            paths.add(file.getPath());
+        }
+        return String.join(", ", paths);
+    }
+
+    /**
+     * @return The video formats to create; {@code --gif} turns a single format into a GIF and adds one to a list.
+     */
+    private List<String> videoFormats() {
+        List<String> formats = new ArrayList<>();
+        for (String format : options.format.split(",")) {
+            if (!format.isBlank() && !formats.contains(format.trim())) {
+                formats.add(format.trim());
+            }
+        }
+        if (options.createGif && !formats.contains(VideoConverter.GIF_FORMAT)) {
+            if (formats.size() <= 1) {
+                formats.clear();
+            }
+            formats.add(VideoConverter.GIF_FORMAT);
+        }
+        return formats;
+    }
+
+    private synchronized void report(String input, String output, long startedNanos, Exception error, List<String> tail, int completed, int total) {
+        long millis = (System.nanoTime() - startedNanos) / 1_000_000;
+        String status = (error == null) ? "ok" : "failed";
+        results.add(new FileResult(input, output, status, millis, (error != null) ? String.valueOf(error.getMessage()) : null));
+        if (error != null) {
+            err.println(String.format("[%d/%d] failed %s: %s", completed, total, input, error.getMessage()));
+            if (!options.verbose) {
+                tail.forEach(line -> err.println("    " + line));
+            }
+        } else if (!options.quiet) {
+            err.println(String.format(Locale.ROOT, "[%d/%d] ok %s -> %s (%.2f s)", completed, total, input, output, millis / 1000.0));
+        }
+    }
+
+    private Consumer<String> prefixed(File inputFile) {
+        String prefix = "[" + inputFile.getName() + "] ";
+        return line -> err.println(prefix + line);
+    }
+
+    private static int exitCode(int failures) {
+        return (failures > 0) ? EXIT_FAILURES : EXIT_OK;
+    }
+
+    private Options parse(String[] args) throws UsageException {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
+            return null;
+        }
+        Options o = new Options();
+        o.command = args[0];
+        switch (o.command) {
+            case MediaFiles.IMAGE:
+                o.format = "png";
+                break;
+            case MediaFiles.VIDEO:
+                o.format = "mp4";
+                break;
+            case MediaFiles.AUDIO:
+                o.format = "mp3";
+                break;
+            default:
+                break;
+        }
+
+        List<String> rest = Arrays.asList(args).subList(1, args.length);
+        for (int i = 0; i < rest.size(); i++) {
+            String arg = rest.get(i);
+            if (arg.equals("--")) {
+                o.inputs.addAll(rest.subList(i + 1, rest.size()));
+                break;
+            }
+            if (!arg.startsWith("-") || arg.equals("-")) {
+                o.inputs.add(arg);
+                continue;
+            }
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return null;
+                case "-o":
+                case "--output":
+                    o.outputDir = new File(value(rest, ++i, arg)).getAbsoluteFile();
+                    break;
+                case "-f":
+                case "--format":
+                    o.format = value(rest, ++i, arg).toLowerCase(Locale.ROOT);
+                    break;
+                case "-j":
+                case "--jobs":
+                    o.jobs = positiveInt(value(rest, ++i, arg), arg);
+                    o.jobsGiven = true;
+                    break;
+                case "--incremental":
+                    o.incremental = true;
+                    break;
+                case "--hash":
+                    o.contentHashing = true;
+                    break;
+                case "--json":
+                    o.json = value(rest, ++i, arg);
+                    break;
+                case "-v":
+                case "--verbose":
+                    o.verbose = true;
+                    break;
+                case "-q":
+                case "--quiet":
+                    o.quiet = true;
+                    break;
+                case "--width":
+                    o.width = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--height":
+                    o.height = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--filter":
+                    o.filter = enumValue(ImageResizer.Filter.class, value(rest, ++i, arg), arg);
+                    break;
+                case "--stream":
+                    o.streaming = true;
+                    break;
+                case "--tile-budget":
+                    o.tileBudgetBytes = positiveInt(value(rest, ++i, arg), arg) * 1024L * 1024L;
+                    break;
+                case "--start":
+                    o.startTime = value(rest, ++i, arg);
+                    break;
+                case "--end":
+                    o.endTime = value(rest, ++i, arg);
+                    break;
+                case "--trim":
+                    o.trimMode = enumValue(VideoConverter.TrimMode.class, value(rest, ++i, arg), arg);
+                    break;
+                case "--gif-fps":
+                    o.gifFps = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--gif-width":
+                    o.gifWidth = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--dither":
+                    o.dither = enumValue(GifOptions.Dither.class, value(rest, ++i, arg), arg);
+                    break;
+                case "--chunked":
+                    o.chunked = true;
+                    break;
+                case "--gif":
+                    o.createGif = true;
+                    break;
+                case "--no-copy":
+                    o.streamCopy = false;
+                    break;
+                case "--mode":
+                    o.mode = enumValue(FfmpegScheduler.Mode.class, value(rest, ++i, arg), arg);
+                    break;
+                case "--rate":
+                    o.sampleRate = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--channels":
+                    o.channels = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--bits":
+                    o.bitDepth = positiveInt(value(rest, ++i, arg), arg);
+                    if (o.bitDepth % 8 != 0 || o.bitDepth > 32) {
+                        throw new UsageException("--bits must be 8, 16, 24 or 32");
+                    }
+                    break;
+                case "--audio":
+                    o.audioOnly = true;
+                    break;
+                case "--per-site":
+                    o.perHost = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--convert":
+                    o.convertFormat = value(rest, ++i, arg).toLowerCase(Locale.ROOT);
+                    if (!Arrays.asList(DownloadConversion.FORMATS).contains(o.convertFormat)) {
+                        throw new UsageException("--convert must be one of " + String.join(", ", DownloadConversion.FORMATS));
+                    }
+                    break;
+                case "--convert-jobs":
+                    o.convertJobs = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--resume":
+                    o.resume = true;
+                    break;
+                case "--fragments":
+                    o.fragments = positiveInt(value(rest, ++i, arg), arg);
+                    break;
+                case "--quality":
+                    String quality = value(rest, ++i, arg);
+                    o.quality = quality.equalsIgnoreCase("best") ? "Best" : quality.toLowerCase(Locale.ROOT);
+                    break;
+                default:
+                    throw new UsageException("unknown option " + arg);
+            }
+        }
+
+        // Resumed downloads go where they were headed before
+        boolean resumeOnly = o.resume && o.command.equals("download") && o.inputs.isEmpty();
+        if (o.outputDir == null && !resumeOnly) {
+            throw new UsageException("missing --output directory");
+        }
+        if (o.inputs.isEmpty() && !resumeOnly) {
+            throw new UsageException("no inputs given");
+        }
+        if ((o.width > 0) != (o.height > 0)) {
+            throw new UsageException("--width and --height must be given together");
+        }
+        return o;
+    }
+
+    private static String value(List<String> args, int index, String option) throws UsageException {
+        if (index >= args.size()) {
+            throw new UsageException(option + " needs a value");
+        }
+        return args.get(index);
+    }
+
+    private static int positiveInt(String value, String option) throws UsageException {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new UsageException(option + " needs a positive number, got '" + value + "'");
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String value, String option) throws UsageException {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("unknown value '" + value + "' for " + option);
+        }
+    }
+
+    private void writeJson(int exitCode, long elapsedMillis) throws IOException {
+        int succeeded = 0;
+        int failed = 0;
+        int skipped = 0;
+        for (FileResult result : results) {
+            switch (result.status) {
+                case "ok":
+                    succeeded++;
+                    break;
+                case "failed":
+                    failed++;
+                    break;
+                default:
+                    skipped++;
+                    break;
+            }
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"command\": ").append(quote(options.command)).append(",\n");
+        json.append("  \"exitCode\": ").append(exitCode).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(elapsedMillis).append(",\n");
+        json.append("  \"succeeded\": ").append(succeeded).append(",\n");
+        json.append("  \"failed\": ").append(failed).append(",\n");
+        json.append("  \"skipped\": ").append(skipped).append(",\n");
+        json.append("  \"files\": [");
+        for (int i = 0; i < results.size(); i++) {
+            FileResult result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"input\": ").append(quote(result.input))
+                    .append(", \"output\": ").append(quote(result.output))
+                    .append(", \"status\": ").append(quote(result.status))
+                    .append(", \"millis\": ").append(result.millis)
+                    .append(", \"error\": ").append(quote(result.error))
+                    .append('}');
+        }
+        json.append(results.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        if ("-".equals(options.json)) {
+            out.print(json);
+            out.flush();
+        } else {
+            Files.writeString(new File(options.json).toPath(), json, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.iconv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers which inputs have already been converted, with which parameters, into which output,
+ * so that re-running a batch can skip files that haven't changed.
+ * <p>
+ * An input counts as unchanged when its size and modification time match the recorded ones and the
+ * recorded output still exists with the size and modification time it had when it was written.
+ * With content hashing enabled, an input whose modification time changed but whose size didn't is
+ * hashed and compared before it is reconverted.
+ * <p>
+ * The manifest is kept in memory and written as a gzip-compressed binary file under {@code ~/.iconv}.
+ * Entries whose input or output no longer exists are dropped when it is written, so the manifest
+ * doesn't keep growing with files that were deleted or moved.
+ */
+public class ConversionManifest {
+
+    private static final int MAGIC = 0x49434D46; // "ICMF"
+    private static final int VERSION = 1;
+    private static final long NO_HASH = 0L;
+
+    private static class Entry {
+        final long inputSize;
+        final long inputModified;
+        final long contentHash;
+        final String parameters;
+        final long outputSize;
+        final long outputModified;
+
+        Entry(long inputSize, long inputModified, long contentHash, String parameters, long outputSize, long outputModified) {
+            this.inputSize = inputSize;
+            this.inputModified = inputModified;
+            this.contentHash = contentHash;
+            this.parameters = parameters;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean contentHashing;
+    private volatile boolean dirty;
+
+    private ConversionManifest(File file) {
+        this.file = file;
+    }
+
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "manifest.bin");
+    }
+
+    /**
+     * Loads the manifest from {@code file}. A missing or unreadable file gives an empty manifest.
+     */
+    public static ConversionManifest load(File file) {
+        ConversionManifest manifest = new ConversionManifest(file);
+        if (!file.exists()) {
+            return manifest;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return manifest;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                manifest.entries.put(key, new Entry(in.readLong(), in.readLong(), in.readLong(), in.readUTF(), in.readLong(), in.readLong()));
+            }
+        } catch (EOFException e) {
+            // A truncated manifest still gives us every complete entry before the cut
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable conversion manifest " + file + ": " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    // Parameter strings shared by the UI and the command line, so both skip the same files
+
+    public static String imageParameters(String format, int width, int height, ImageResizer.Filter filter) {
+        return "image|" + format + "|" + width + "x" + height + "|" + filter.name();
+    }
+
+    /**
+     * @param gifOptions The GIF settings if a GIF is created, otherwise {@code null}.
+     */
+    public static String videoParameters(String format, String startTime, String endTime, GifOptions gifOptions, boolean streamCopy, VideoConverter.TrimMode trimMode) {
+        String gif = (gifOptions != null) ? "gif " + gifOptions : "false";
+        return "video|" + format + "|" + startTime + "|" + endTime + "|" + gif + "|" + (streamCopy ? "copy" : "encode") + "|" + trimMode.name();
+    }
+
+    public static String audioParameters(String format, AudioOptions options) {
+        return "audio|" + format + "|" + options;
+    }
+
+    public void setContentHashing(boolean contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
+    /**
+     * @param parameters Everything besides the input that affects the output, e.g. format and size.
+     * @return Whether {@code output} was produced from the current contents of {@code input} with the same parameters.
+     */
+    public boolean isUpToDate(File input, File output, String parameters) throws IOException {
+        Entry entry = entries.get(key(input, output));
+        if (entry == null || !entry.parameters.equals(parameters)) {
+            return false;
+        }
+        if (!output.isFile() || output.length() != entry.outputSize || output.lastModified() != entry.outputModified) {
+            return false;
+        }
+        long size = input.length();
+        long modified = input.lastModified();
+        if (size != entry.inputSize) {
+            return false;
+        }
+        if (modified == entry.inputModified) {
+            return true;
+        }
+        // Touched but possibly unchanged; only a hash can tell
+        if (contentHashing && entry.contentHash != NO_HASH && hash(input) == entry.contentHash) {
+            entries.put(key(input, output), new Entry(size, modified, entry.contentHash, parameters, entry.outputSize, entry.outputModified));
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a successful conversion. Call after {@code output} has been completely written.
+     */
+    public void record(File input, File output, String parameters) throws IOException {
+        long hash = contentHashing ? hash(input) : NO_HASH;
+        entries.put(key(input, output), new Entry(input.length(), input.lastModified(), hash, parameters, output.length(), output.lastModified()));
+        dirty = true;
+    }
+
+    /**
+     * Writes the manifest if anything changed since it was loaded or last saved, without the entries
+     * of deleted or moved files. The file is replaced atomically, so a crash never leaves a
+     * half-written manifest behind.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        entries.entrySet().removeIf(e -> isStale(e.getKey()));
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        Map<String, Entry> snapshot = Map.copyOf(entries);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp.toPath()))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.inputSize);
+                out.writeLong(entry.inputModified);
+                out.writeLong(entry.contentHash);
+                out.writeUTF(entry.parameters);
+                out.writeLong(entry.outputSize);
+                out.writeLong(entry.outputModified);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(File input, File output) {
+        return input.getAbsolutePath() + '\n' + output.getAbsolutePath();
+    }
+
+    // Whether the input or output of the entry is gone, so the entry can never match again
+    private static boolean isStale(String key) {
+        int separator = key.indexOf('\n');
+        return !new File(key.substring(0, separator)).isFile() || !new File(key.substring(separator + 1)).isFile();
+    }
+
+    private static long hash(File input) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(input.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        // Mix in the length so the value is never the NO_HASH marker for real content
+        return (input.length() << 32) ^ crc.getValue() | 1L << 63;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Converts downloaded files into another format as the {@link DownloadQueue.PostProcessor} of a
+ * download queue. The converted file is written next to the download, which is kept.
+ * <p>
+ * Video formats are produced with {@link VideoConverter} and audio formats with {@link AudioConverter},
+ * each ffmpeg process getting an equal share of the cores.
+ */
+public class DownloadConversion implements DownloadQueue.PostProcessor {
+
+    public static final String[] FORMATS = {"mp4", "mkv", "mov", "avi", "webm", "gif", "mp3", "wav", "aac", "flac"};
+    // Conversions at once; downloads mostly wait on the network, so a couple keep up with them
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    private static final Set<String> VIDEO_FORMATS = Set.of("mp4", "mkv", "mov", "avi", "webm", "gif");
+
+    private final String format;
+    private final int threads;
+    private final VideoConverter videoConverter = new VideoConverter();
+    private final AudioConverter audioConverter = new AudioConverter();
+
+    /**
+     * @param concurrency The number of conversions the queue runs at once, see {@link DownloadQueue#setPostProcessor}.
+     */
+    public DownloadConversion(String format, int concurrency) {
+        this.format = format.toLowerCase();
+        this.threads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, concurrency));
+    }
+
+    @Override
+    public void process(DownloadQueue.Item item, File file, Consumer<String> onProgress) throws IOException, InterruptedException {
+        File outputDir = file.getAbsoluteFile().getParentFile();
+        if (VIDEO_FORMATS.contains(format)) {
+            boolean gif = format.equals(VideoConverter.GIF_FORMAT);
+            if (videoConverter.getOutputFile(file, format, outputDir, gif).equals(file)) {
+                onProgress.accept(file.getName() + " is already " + format);
+                return;
+            }
+            videoConverter.convert(file, format, outputDir, null, null, gif, threads, onProgress);
+        } else {
+            if (audioConverter.getOutputFile(file, format, outputDir).equals(file)) {
+                onProgress.accept(file.getName() + " is already " + format);
+                return;
+            }
+            audioConverter.convert(file, format, outputDir, threads, onProgress);
+        }
+    }
+}
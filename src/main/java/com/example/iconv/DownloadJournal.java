@@ -0,0 +1,227 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records which downloads were queued, started and finished, so a batch interrupted by closing
+ * iConv or a crash can be resumed, and videos already downloaded are skipped without asking the
+ * site again.
+ * <p>
+ * Every change is appended to {@code ~/.iconv/downloads.journal} as one line and forced to disk
+ * before the download continues, so the journal is never behind the downloads by more than the
+ * line being written. Loading replays the lines and rewrites the file with only the latest state of
+ * each download. A download is identified by its URL together with the output directory and the
+ * quality settings, since the same video in another folder or format is a different download.
+ */
+public class DownloadJournal {
+
+    // Finished downloads remembered for skipping; the oldest beyond this are forgotten
+    private static final int MAX_FINISHED_ENTRIES = 50_000;
+
+    private static DownloadJournal shared;
+
+    public static class Entry {
+        public final String url;
+        public final File outputDir;
+        public final boolean extractAudio;
+        public final String quality;
+        final DownloadQueue.State state;
+
+        Entry(String url, File outputDir, boolean extractAudio, String quality, DownloadQueue.State state) {
+            this.url = url;
+            this.outputDir = outputDir;
+            this.extractAudio = extractAudio;
+            this.quality = quality;
+            this.state = state;
+        }
+
+        String key() {
+            return key(url, outputDir, extractAudio, quality);
+        }
+
+        static String key(String url, File outputDir, boolean extractAudio, String quality) {
+            return url + "\t" + outputDir.getAbsolutePath() + "\t" + extractAudio + "\t" + quality;
+        }
+
+        String toLine() {
+            return state.name() + "\t" + outputDir.getAbsolutePath() + "\t" + (extractAudio ? "audio" : "video") + "\t" + quality + "\t" + url + "\n";
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split("\t", 5);
+            if (fields.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(fields[4], new File(fields[1]), fields[2].equals("audio"), fields[3], DownloadQueue.State.valueOf(fields[0]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final File file;
+    // Latest state of each download, least recently changed first
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private FileChannel channel;
+
+    private DownloadJournal(File file) {
+        this.file = file;
+    }
+
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "downloads.journal");
+    }
+
+    /**
+     * @return The directory of yt-dlp's download archives next to the journal, see {@link Downloader#setDownloadArchiveDir}.
+     */
+    public static File defaultArchiveDir() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "download-archives");
+    }
+
+    /**
+     * @return The archive in {@code archiveDir} for downloads into the directory with these settings,
+     *         which tell downloads apart like the journal does.
+     */
+    public static File archiveFile(File archiveDir, File outputDir, boolean extractAudio, String quality) {
+        String settings = outputDir.getAbsolutePath() + "\t" + extractAudio + "\t" + quality;
+        return new File(archiveDir, UUID.nameUUIDFromBytes(settings.getBytes(StandardCharsets.UTF_8)) + ".txt");
+    }
+
+    /**
+     * @return The journal backed by {@link #defaultFile()}, loaded on first use.
+     */
+    public static synchronized DownloadJournal shared() {
+        if (shared == null) {
+            shared = load(defaultFile());
+        }
+        return shared;
+    }
+
+    /**
+     * Loads the journal from {@code file} and compacts it. Lines cut off by a crash are ignored.
+     */
+    public static DownloadJournal load(File file) {
+        DownloadJournal journal = new DownloadJournal(file);
+        if (file.exists()) {
+            try {
+                String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                // A last line without its newline was cut off while being written
+                for (String line : text.substring(0, text.lastIndexOf('\n') + 1).split("\n")) {
+                    Entry entry = Entry.parse(line);
+                    if (entry != null) {
+                        journal.entries.remove(entry.key());
+                        journal.entries.put(entry.key(), entry);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable download journal " + file + ": " + e.getMessage());
+            }
+        }
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            System.err.println("Could not compact the download journal " + file + ": " + e.getMessage());
+        }
+        return journal;
+    }
+
+    /**
+     * @return Whether the URL was downloaded into the directory with these settings before.
+     */
+    public synchronized boolean isDone(String url, File outputDir, boolean extractAudio, String quality) {
+        Entry entry = entries.get(Entry.key(url, outputDir, extractAudio, quality));
+        return entry != null && entry.state == DownloadQueue.State.DONE;
+    }
+
+    /**
+     * @return The downloads that were queued, running or converting when the journal was last written, least recently changed first.
+     */
+    public synchronized List<Entry> unfinished() {
+        List<Entry> unfinished = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.state == DownloadQueue.State.QUEUED || entry.state == DownloadQueue.State.RUNNING
+                    || entry.state == DownloadQueue.State.CONVERTING) {
+                unfinished.add(entry);
+            }
+        }
+        return unfinished;
+    }
+
+    /**
+     * Records the new state of a download and forces it to disk.
+     */
+    public void record(String url, File outputDir, boolean extractAudio, String quality, DownloadQueue.State state) throws IOException {
+        record(List.of(url), outputDir, extractAudio, quality, state);
+    }
+
+    /**
+     * Records the same state for several downloads with a single write.
+     */
+    public synchronized void record(List<String> urls, File outputDir, boolean extractAudio, String quality, DownloadQueue.State state) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String url : urls) {
+            Entry entry = new Entry(url, outputDir, extractAudio, quality, state);
+            // Re-inserted, so the order stays that of the latest change
+            entries.remove(entry.key());
+            entries.put(entry.key(), entry);
+            lines.append(entry.toLine());
+        }
+        if (channel == null) {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Rewrites the journal with one line per download, dropping the oldest finished downloads beyond the limit.
+     */
+    private synchronized void compact() throws IOException {
+        int finished = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.state == DownloadQueue.State.DONE || entry.state == DownloadQueue.State.FAILED) {
+                finished++;
+            }
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && finished > MAX_FINISHED_ENTRIES; ) {
+            Entry entry = it.next();
+            if (entry.state == DownloadQueue.State.DONE || entry.state == DownloadQueue.State.FAILED) {
+                it.remove();
+                finished--;
+            }
+        }
+        if (!file.exists()) {
+            return;
+        }
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.toLine());
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
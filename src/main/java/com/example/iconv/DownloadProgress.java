@@ -0,0 +1,80 @@
+package com.example.iconv;
+
+/**
+ * A progress update of a running yt-dlp download, built from its {@code --progress-template} output.
+ * Each value is -1 when yt-dlp doesn't know it, e.g. the size of a live stream.
+ */
+public class DownloadProgress {
+
+    public final long downloadedBytes;
+    // The exact size, or yt-dlp's estimate for segmented downloads
+    public final long totalBytes;
+    public final double bytesPerSecond;
+    public final double etaSeconds;
+    // The fragment being fetched and the number of fragments of a segmented (HLS/DASH) download
+    public final int fragmentIndex;
+    public final int fragmentCount;
+    public final boolean done;
+
+    public DownloadProgress(long downloadedBytes, long totalBytes, double bytesPerSecond, double etaSeconds, int fragmentIndex, int fragmentCount, boolean done) {
+        this.downloadedBytes = downloadedBytes;
+        this.totalBytes = totalBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.etaSeconds = etaSeconds;
+        this.fragmentIndex = fragmentIndex;
+        this.fragmentCount = fragmentCount;
+        this.done = done;
+    }
+
+    /**
+     * @return The completed share of the current file in the range 0-1, or -1 if unknown.
+     */
+    public double fraction() {
+        if (done) {
+            return 1;
+        }
+        if (totalBytes > 0 && downloadedBytes >= 0) {
+            return Math.min(1, downloadedBytes / (double) totalBytes);
+        }
+        if (fragmentCount > 0 && fragmentIndex >= 0) {
+            return Math.min(1, fragmentIndex / (double) fragmentCount);
+        }
+        return -1;
+    }
+
+    public double percent() {
+        double fraction = fraction();
+        return (fraction < 0) ? -1 : fraction * 100;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double percent = percent();
+        if (percent >= 0) {
+            sb.append(String.format("%.1f%%", percent));
+        } else {
+            sb.append(formatBytes(Math.max(0, downloadedBytes)));
+        }
+        if (bytesPerSecond > 0) {
+            sb.append(", ").append(formatBytes((long) bytesPerSecond)).append("/s");
+        }
+        if (etaSeconds >= 0 && !done) {
+            sb.append(", ETA ").append(TimeCode.format(etaSeconds));
+        }
+        return sb.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KiB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MiB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GiB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.iconv;
+
+import java.util.function.Consumer;
+
+/**
+ * Turns the progress lines yt-dlp writes with {@link #TEMPLATE} into {@link DownloadProgress} events.
+ * <p>
+ * The template prints the raw numbers separated by single spaces, with {@code NA} for unknown values,
+ * so a line is read with a single left-to-right scan instead of matching yt-dlp's human-readable
+ * output. Events are forwarded at most once per {@code minIntervalMillis}; the event of a finished
+ * file is always forwarded.
+ */
+public class DownloadProgressParser {
+
+    // Marks our lines among yt-dlp's other output
+    static final String PREFIX = "[iconv-progress] ";
+    /**
+     * The value of yt-dlp's {@code --progress-template} option that this parser reads.
+     */
+    public static final String TEMPLATE = "download:" + PREFIX
+            + "%(progress.downloaded_bytes)s %(progress.total_bytes)s %(progress.total_bytes_estimate)s"
+            + " %(progress.speed)s %(progress.eta)s %(progress.fragment_index)s %(progress.fragment_count)s"
+            + " %(progress.status)s";
+
+    private final long minIntervalMillis;
+    private final Consumer<DownloadProgress> listener;
+    private long lastEmitted;
+    // Position of the next field while scanning a line
+    private int position;
+
+    public DownloadProgressParser(long minIntervalMillis, Consumer<DownloadProgress> listener) {
+        this.minIntervalMillis = minIntervalMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Consumes one line of yt-dlp output.
+     *
+     * @return Whether it was a progress line; other lines are left to the caller.
+     */
+    public boolean acceptLine(String line) {
+        if (!line.startsWith(PREFIX)) {
+            return false;
+        }
+        position = PREFIX.length();
+        double downloaded = nextNumber(line);
+        double total = nextNumber(line);
+        double totalEstimate = nextNumber(line);
+        double speed = nextNumber(line);
+        double eta = nextNumber(line);
+        double fragmentIndex = nextNumber(line);
+        double fragmentCount = nextNumber(line);
+        boolean done = line.startsWith("finished", position);
+        if (downloaded < 0 && fragmentIndex < 0 && !done) {
+            // Nothing to show yet, or not our format after all
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!done && now - lastEmitted < minIntervalMillis) {
+            return true;
+        }
+        lastEmitted = now;
+        listener.accept(new DownloadProgress((long) downloaded, (long) ((total >= 0) ? total : totalEstimate),
+                speed, eta, (int) fragmentIndex, (int) fragmentCount, done));
+        return true;
+    }
+
+    /**
+     * Reads the number at {@link #position} and moves past the space after it.
+     *
+     * @return The number, or -1 for {@code NA} and anything else that isn't a plain decimal.
+     */
+    private double nextNumber(String line) {
+        int length = line.length();
+        int start = position;
+        int end = start;
+        while (end < length && line.charAt(end) != ' ') {
+            end++;
+        }
+        position = Math.min(length, end + 1);
+        if (end - start == 2 && line.startsWith("NA", start)) {
+            return -1;
+        }
+
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean inFraction = false;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (inFraction) {
+                    // Further digits don't matter for byte counts and rates
+                    if (scale < 1_000_000_000L) {
+                        fraction = fraction * 10 + (c - '0');
+                        scale *= 10;
+                    }
+                } else {
+                    whole = whole * 10 + (c - '0');
+                }
+            } else if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else {
+                return parseUnusual(line.substring(start, end));
+            }
+        }
+        return digits ? whole + fraction / (double) scale : -1;
+    }
+
+    // Python writes very large or small floats in exponent notation, e.g. 1.5e+16
+    private static double parseUnusual(String value) {
+        try {
+            double parsed = Double.parseDouble(value);
+            return (parsed >= 0 && !Double.isInfinite(parsed)) ? parsed : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Downloads many URLs with several yt-dlp processes at once.
+ * <p>
+ * Playlists and channels are first expanded into their videos, so their entries are spread over the
+ * processes like single URLs. At most {@code perHostLimit} downloads run against the same site at a
+ * time; a free process skips URLs of busy sites and takes the next one from another site, so a queue
+ * dominated by one site doesn't get throttled by it and others still start right away.
+ * <p>
+ * With a {@link DownloadJournal} every item's progress is recorded, and items the journal already
+ * has as downloaded are skipped without starting yt-dlp. A playlist is recorded as downloaded once
+ * all its entries are, and is then skipped without listing it again.
+ * <p>
+ * With a {@link PostProcessor} each downloaded file is handed to a separate pool of conversion
+ * threads as soon as its download ends, so a video is converted while the next ones download.
+ */
+public class DownloadQueue {
+
+    public enum State {
+        QUEUED, RUNNING,
+        // Downloaded and waiting for or running its post-processing
+        CONVERTING,
+        DONE, FAILED,
+        // Downloaded in an earlier run, according to the journal
+        SKIPPED
+    }
+
+    // Enough to fill a typical connection without tripping the rate limits of video sites
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    public static final int DEFAULT_PER_HOST_LIMIT = 2;
+
+    public static class Item {
+        public final String url;
+        // The playlist or channel the item was listed from, or null
+        final String playlist;
+        final String host;
+        private volatile State state = State.QUEUED;
+        // The latest update of the running download, or null before the first one
+        private volatile DownloadProgress progress;
+
+        Item(String url, String playlist) {
+            this.url = url;
+            this.playlist = playlist;
+            this.host = hostOf(url);
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return The latest progress of the running download, or {@code null} if none was reported yet.
+         */
+        public DownloadProgress getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return How much of the current file is downloaded, 0-1; 0 while unknown.
+         */
+        double fraction() {
+            DownloadProgress current = progress;
+            return (current != null) ? Math.max(0, current.fraction()) : 0;
+        }
+
+        @Override
+        public String toString() {
+            switch (state) {
+                case RUNNING:
+                    DownloadProgress current = progress;
+                    return (current != null) ? current + "  " + url : "starting  " + url;
+                case CONVERTING:
+                    return "convert " + url;
+                case DONE:
+                    return "done    " + url;
+                case FAILED:
+                    return "failed  " + url;
+                case SKIPPED:
+                    return "skipped " + url;
+                default:
+                    return "queued  " + url;
+            }
+        }
+    }
+
+    /**
+     * Processes a downloaded file, e.g. converts it, on one of the queue's conversion threads.
+     */
+    public interface PostProcessor {
+        void process(Item item, File file, Consumer<String> onProgress) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Receives download events. Callbacks are invoked from the queue's worker threads.
+     */
+    public interface Listener {
+        void onItemStarted(Item item);
+
+        /**
+         * Called when the item is downloaded and handed to the {@link PostProcessor}.
+         */
+        void onItemConverting(Item item);
+
+        /**
+         * Called a few times a second per running download.
+         */
+        void onItemProgress(Item item, DownloadProgress progress);
+
+        /**
+         * @param error The failure, or {@code null} if the download succeeded.
+         */
+        void onItemFinished(Item item, Exception error, int completed, int total);
+    }
+
+    public static class Result {
+        public final int successCount;
+        public final int failureCount;
+
+        Result(int successCount, int failureCount) {
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+        }
+    }
+
+    private final Downloader downloader;
+    private final int maxConcurrent;
+    private final int perHostLimit;
+    private DownloadJournal journal;
+    private PostProcessor postProcessor;
+    private int postProcessorConcurrency = 1;
+
+    // Guarded by this: the items not started yet and the running downloads per host
+    private final LinkedList<Item> pending = new LinkedList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+
+    public DownloadQueue(Downloader downloader, int maxConcurrent, int perHostLimit) {
+        this.downloader = downloader;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.perHostLimit = Math.max(1, perHostLimit);
+    }
+
+    /**
+     * Records the items' progress in {@code journal} and skips the ones it has as downloaded.
+     */
+    public void setJournal(DownloadJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Runs {@code postProcessor} on every downloaded file, at most {@code concurrency} files at a time
+     * independently of the downloads, or none if {@code null}. An item only counts as done once its
+     * files are processed.
+     */
+    public void setPostProcessor(PostProcessor postProcessor, int concurrency) {
+        this.postProcessor = postProcessor;
+        this.postProcessorConcurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @return Items for the URLs as they are, without expanding playlists.
+     */
+    public static List<Item> items(List<String> urls) {
+        List<Item> items = new ArrayList<>();
+        for (String url : urls) {
+            items.add(new Item(url, null));
+        }
+        return items;
+    }
+
+    /**
+     * Expands playlists and channels among {@code urls} into their entries, listing several at once.
+     * Other URLs are kept as they are without asking the site, see {@link Downloader#isPlaylistUrl}, and
+     * so are playlists the journal has as downloaded into the directory with these settings.
+     */
+    public List<Item> expand(List<String> urls, File outputDir, boolean extractAudio, String quality, Consumer<String> onProgress) throws InterruptedException {
+        List<List<Item>> expanded = new ArrayList<>();
+        List<Integer> toList = new ArrayList<>();
+        for (String url : urls) {
+            expanded.add(List.of(new Item(url, null)));
+            boolean done = journal != null && journal.isDone(url, outputDir, extractAudio, quality);
+            if (!done && Downloader.isPlaylistUrl(url)) {
+                toList.add(expanded.size() - 1);
+            }
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        runWorkers(Math.min(maxConcurrent, toList.size()), "playlist-worker-", () -> {
+            int next;
+            while ((next = nextIndex.getAndIncrement()) < toList.size() && !Thread.currentThread().isInterrupted()) {
+                int index = toList.get(next);
+                String url = urls.get(index);
+                try {
+                    List<String> entries = downloader.expandPlaylist(url, onProgress);
+                    if (entries.size() == 1 && entries.get(0).equals(url)) {
+                        continue;
+                    }
+                    List<Item> items = new ArrayList<>();
+                    entries.forEach(entry -> items.add(new Item(entry, url)));
+                    synchronized (expanded) {
+                        expanded.set(index, items);
+                    }
+                } catch (IOException e) {
+                    onProgress.accept("Could not list " + url + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        List<Item> items = new ArrayList<>();
+        expanded.forEach(items::addAll);
+        return items;
+    }
+
+    /**
+     * Downloads the items and waits for all of them.
+     *
+     * @param onProgress Gives the receiver of each item's yt-dlp messages other than progress.
+     */
+    public Result runAll(List<Item> items, File outputDir, boolean extractAudio, String quality, Function<Item, Consumer<String>> onProgress, Listener listener) throws InterruptedException {
+        int total = items.size();
+        if (total == 0) {
+            return new Result(0, 0);
+        }
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger successCount = new AtomicInteger();
+        // Entries of each playlist not downloaded yet; the playlist is journaled as done at zero
+        Map<String, AtomicInteger> playlistRemaining = new HashMap<>();
+        for (Item item : items) {
+            if (item.playlist != null) {
+                playlistRemaining.computeIfAbsent(item.playlist, playlist -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+        List<Item> toDownload = new ArrayList<>();
+        for (Item item : items) {
+            if (journal != null && journal.isDone(item.url, outputDir, extractAudio, quality)) {
+                item.state = State.SKIPPED;
+                successCount.incrementAndGet();
+                playlistEntryDone(item, playlistRemaining, outputDir, extractAudio, quality, onProgress.apply(item));
+                listener.onItemFinished(item, null, completed.incrementAndGet(), total);
+            } else {
+                toDownload.add(item);
+            }
+        }
+        if (toDownload.isEmpty()) {
+            return new Result(successCount.get(), 0);
+        }
+        if (journal != null) {
+            List<String> urls = new ArrayList<>();
+            toDownload.forEach(item -> urls.add(item.url));
+            try {
+                journal.record(urls, outputDir, extractAudio, quality, State.QUEUED);
+            } catch (IOException e) {
+                onProgress.apply(toDownload.get(0)).accept("Could not update the download journal: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            pending.addAll(toDownload);
+        }
+
+        ExecutorService conversions = (postProcessor != null)
+                ? Executors.newFixedThreadPool(postProcessorConcurrency, threadFactory("convert-slot-"))
+                : null;
+        try {
+            runWorkers(Math.min(maxConcurrent, toDownload.size()), "download-slot-", () -> {
+                Item item;
+                while ((item = takeNext()) != null) {
+                    Item current = item;
+                    Consumer<String> itemProgress = onProgress.apply(current);
+                    current.state = State.RUNNING;
+                    journal(current, outputDir, extractAudio, quality, State.RUNNING, itemProgress);
+                    listener.onItemStarted(current);
+                    Exception error = null;
+                    List<File> files = new ArrayList<>();
+                    try {
+                        downloader.download(current.url, outputDir, extractAudio, quality, itemProgress, progress -> {
+                            current.progress = progress;
+                            listener.onItemProgress(current, progress);
+                        }, (conversions != null) ? files::add : null);
+                    } catch (InterruptedException ex) {
+                        error = ex;
+                        Thread.currentThread().interrupt();
+                    } catch (IOException | RuntimeException ex) {
+                        error = ex;
+                    } finally {
+                        release(current);
+                    }
+                    if (error == null && conversions != null && !files.isEmpty()) {
+                        // Only done once converted, so a failed or interrupted conversion is retried
+                        current.state = State.CONVERTING;
+                        journal(current, outputDir, extractAudio, quality, State.CONVERTING, itemProgress);
+                        listener.onItemConverting(current);
+                        conversions.execute(() -> {
+                            Exception conversionError = null;
+                            try {
+                                for (File file : files) {
+                                    postProcessor.process(current, file, itemProgress);
+                                }
+                            } catch (InterruptedException ex) {
+                                conversionError = ex;
+                                Thread.currentThread().interrupt();
+                            } catch (IOException | RuntimeException ex) {
+                                conversionError = ex;
+                            }
+                            finish(current, conversionError, outputDir, extractAudio, quality, itemProgress, playlistRemaining, successCount, completed, total, listener);
+                        });
+                    } else {
+                        finish(current, error, outputDir, extractAudio, quality, itemProgress, playlistRemaining, successCount, completed, total, listener);
+                    }
+                }
+            });
+            if (conversions != null) {
+                // Downloads are done; wait for the last conversions
+                conversions.shutdown();
+                conversions.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (conversions != null) {
+                conversions.shutdownNow();
+            }
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+
+        int succeeded = successCount.get();
+        return new Result(succeeded, completed.get() - succeeded);
+    }
+
+    /**
+     * @return The share of the items' downloads done, 0-1, counting finished items as complete.
+     */
+    public static double fraction(List<Item> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        double sum = 0;
+        for (Item item : items) {
+            sum += (item.state == State.RUNNING || item.state == State.QUEUED) ? item.fraction() : 1;
+        }
+        return sum / items.size();
+    }
+
+    private void finish(Item item, Exception error, File outputDir, boolean extractAudio, String quality, Consumer<String> onProgress,
+                        Map<String, AtomicInteger> playlistRemaining, AtomicInteger successCount, AtomicInteger completed, int total, Listener listener) {
+        item.state = (error == null) ? State.DONE : State.FAILED;
+        // An interrupted item stays running or converting in the journal, so it is resumed
+        if (!(error instanceof InterruptedException)) {
+            journal(item, outputDir, extractAudio, quality, item.state, onProgress);
+        }
+        if (error == null) {
+            successCount.incrementAndGet();
+            playlistEntryDone(item, playlistRemaining, outputDir, extractAudio, quality, onProgress);
+        }
+        listener.onItemFinished(item, error, completed.incrementAndGet(), total);
+    }
+
+    // Journals the item's playlist as done once every entry of it is
+    private void playlistEntryDone(Item item, Map<String, AtomicInteger> playlistRemaining, File outputDir, boolean extractAudio, String quality, Consumer<String> onProgress) {
+        if (journal == null || item.playlist == null || playlistRemaining.get(item.playlist).decrementAndGet() > 0) {
+            return;
+        }
+        try {
+            journal.record(item.playlist, outputDir, extractAudio, quality, State.DONE);
+        } catch (IOException e) {
+            onProgress.accept("Could not update the download journal: " + e.getMessage());
+        }
+    }
+
+    private void journal(Item item, File outputDir, boolean extractAudio, String quality, State state, Consumer<String> onProgress) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.record(item.url, outputDir, extractAudio, quality, state);
+        } catch (IOException e) {
+            // Downloading matters more than being able to resume it
+            onProgress.accept("Could not update the download journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until an item whose site has room for another download is pending and takes it.
+     *
+     * @return The item, or {@code null} if nothing is left or the thread was interrupted.
+     */
+    private synchronized Item takeNext() {
+        while (!pending.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            for (Item item : pending) {
+                int running = runningPerHost.getOrDefault(item.host, 0);
+                if (running < perHostLimit) {
+                    pending.remove(item);
+                    runningPerHost.put(item.host, running + 1);
+                    return item;
+                }
+            }
+            try {
+                // Every pending site is busy; wait for a download to finish
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(Item item) {
+        runningPerHost.merge(item.host, -1, Integer::sum);
+        notifyAll();
+    }
+
+    private static void runWorkers(int count, String namePrefix, Runnable worker) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, count), threadFactory(namePrefix));
+        try {
+            for (int i = 0; i < Math.max(1, count); i++) {
+                pool.execute(worker);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            // Interrupts running downloads if we were interrupted while waiting
+            pool.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory threadFactory(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Downloads from www.example.com and example.com count against the same limit
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url.trim()).getHost();
+            if (host == null) {
+                return "";
+            }
+            host = host.toLowerCase();
+            return host.startsWith("www.") ? host.substring(4) : host;
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+}
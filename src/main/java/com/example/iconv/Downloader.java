@@ -8,21 +8,61 @@ import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Downloader {
 
-    // Regex to capture the progress percentage and ETA from yt-dlp output
-    private static final Pattern YTDLP_PROGRESS_PATTERN = Pattern.compile(
-            "\\[download\\]\\s+([\\d.]+)% of.*ETA (\\d{2}:\\d{2})"
-    );
+    // Marks the lines with the paths of finished files among yt-dlp's output
+    private static final String FILE_PREFIX = "[iconv-file] ";
 
     private static final String YT_DLP_URL_WINDOWS = "https://github.com/yt-dlp/yt-dlp/releases/latest/download/yt-dlp.exe";
     private static final String YT_DLP_URL_LINUX = "https://github.com/yt-dlp/yt-dlp/releases/latest/download/yt-dlp";
     private static final String YT_DLP_URL_MACOS = "https://github.com/yt-dlp/yt-dlp/releases/latest/download/yt-dlp_macos";
 
+    // Path parts of playlist, channel and album URLs on the common sites
+    private static final String[] PLAYLIST_PATH_MARKERS = {"/playlist", "/channel/", "/c/", "/user/", "/sets/", "/album/", "/videos", "/showcase/"};
+
+    private int concurrentFragments = 1;
+    private File downloadArchiveDir;
+
+    /**
+     * Sets how many fragments of a segmented (HLS/DASH) download yt-dlp fetches at once.
+     */
+    public void setConcurrentFragments(int concurrentFragments) {
+        this.concurrentFragments = Math.max(1, concurrentFragments);
+    }
+
+    /**
+     * Sets the directory of yt-dlp's download archives, in which it records every video it downloaded
+     * and skips the ones already in them, or {@code null} for none. yt-dlp only knows videos by site
+     * and id, so there is one archive per output directory and settings, see
+     * {@link DownloadJournal#archiveFile}; otherwise a video downloaded once would be skipped as MP3 or
+     * in another folder.
+     */
+    public void setDownloadArchiveDir(File downloadArchiveDir) {
+        this.downloadArchiveDir = downloadArchiveDir;
+    }
+
     public void download(String url, File outputDirectory, boolean extractAudio, String quality, Consumer<String> onProgress) throws IOException, InterruptedException {
+        download(url, outputDirectory, extractAudio, quality, onProgress, null);
+    }
+
+    /**
+     * @param onProgress Receives yt-dlp's messages other than progress.
+     * @param onStatus   Receives progress updates a few times a second, or {@code null} to ignore them.
+     *                   Videos downloaded as separate video and audio streams go from 0 to 100% once
+     *                   per stream.
+     */
+    public void download(String url, File outputDirectory, boolean extractAudio, String quality, Consumer<String> onProgress, Consumer<DownloadProgress> onStatus) throws IOException, InterruptedException {
+        download(url, outputDirectory, extractAudio, quality, onProgress, onStatus, null);
+    }
+
+    /**
+     * @param onFile Receives each file as soon as yt-dlp has finished it, including post-processing
+     *               such as merging or extracting audio, or {@code null}. Asking for the files makes
+     *               yt-dlp quiet, so fewer other messages reach {@code onProgress}, and skips the
+     *               download archive so files downloaded before are reported too.
+     */
+    public void download(String url, File outputDirectory, boolean extractAudio, String quality, Consumer<String> onProgress, Consumer<DownloadProgress> onStatus, Consumer<File> onFile) throws IOException, InterruptedException {
         if (url == null || url.trim().isEmpty()) {
             throw new IllegalArgumentException("URL cannot be empty.");
         }
@@ -35,11 +75,28 @@ public class Downloader {
         List<String> command = new ArrayList<>();
         command.add(ytDlpExecutable.getAbsolutePath());
         command.add("--progress"); // Ensure progress output is enabled
+        // Raw numbers, one update per line, instead of the human-readable progress bar
+        command.add("--newline");
+        command.add("--progress-template");
+        command.add(DownloadProgressParser.TEMPLATE);
         command.add("--ignore-errors");
         command.add("--output");
         command.add(new File(outputDirectory, "%(title)s.%(ext)s").getAbsolutePath());
         command.add("--retries");
         command.add("10");
+        // Picks up the .part file of an interrupted download instead of starting over
+        command.add("--continue");
+        // A caller asking for the files needs them even if they were downloaded before, e.g. to
+        // finish converting them; --continue still keeps them from being fetched again
+        if (downloadArchiveDir != null && onFile == null) {
+            Files.createDirectories(downloadArchiveDir.toPath());
+            command.add("--download-archive");
+            command.add(DownloadJournal.archiveFile(downloadArchiveDir, outputDirectory, extractAudio, quality).getAbsolutePath());
+        }
+        if (concurrentFragments > 1) {
+            command.add("--concurrent-fragments");
+            command.add(String.valueOf(concurrentFragments));
+        }
 
         if (extractAudio) {
             command.add("--extract-audio");
@@ -67,6 +124,11 @@ public class Downloader {
             command.add(formatString);
         }
 
+        if (onFile != null) {
+            command.add("--print");
+            command.add("after_move:" + FILE_PREFIX + "%(filepath)s");
+        }
+
         command.add(url);
 
         ProcessBuilder processBuilder = new ProcessBuilder(command);
@@ -77,15 +139,14 @@ public class Downloader {
 
         Process process = processBuilder.start();
 
+        DownloadProgressParser parser = new DownloadProgressParser(FfmpegProgressParser.DEFAULT_MIN_INTERVAL_MILLIS,
+                (onStatus != null) ? onStatus : progress -> { });
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                Matcher matcher = YTDLP_PROGRESS_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    String percentage = matcher.group(1);
-                    String eta = matcher.group(2);
-                    onProgress.accept(String.format("Download progress: %s%%, ETA: %s", percentage, eta));
-                } else {
+                if (onFile != null && line.startsWith(FILE_PREFIX)) {
+                    onFile.accept(new File(line.substring(FILE_PREFIX.length())));
+                } else if (!parser.acceptLine(line)) {
                     // Log other output lines as well, as they might contain useful info
                     onProgress.accept(line);
                 }
@@ -99,10 +160,68 @@ public class Downloader {
         } else {
             onProgress.accept("Download failed with exit code: " + exitCode);
             // The error stream is already redirected, so errors would have been logged.
+            throw new IOException("yt-dlp exited with code " + exitCode);
+        }
+    }
+
+    /**
+     * Tells from its shape whether a URL is likely a playlist, channel or album, which are worth
+     * listing with {@link #expandPlaylist}. Anything else is taken for a single video and downloaded
+     * directly, since listing it would cost a second extraction.
+     */
+    public static boolean isPlaylistUrl(String url) {
+        String lower = url.trim().toLowerCase();
+        int query = lower.indexOf('?');
+        String path = (query >= 0) ? lower.substring(0, query) : lower;
+        if (query >= 0 && (lower.indexOf("list=", query) > 0)) {
+            return true;
+        }
+        for (String marker : PLAYLIST_PATH_MARKERS) {
+            if (path.contains(marker)) {
+                return true;
+            }
+        }
+        // A channel handle, e.g. youtube.com/@name, but not a video under one like tiktok.com/@name/video/1
+        return path.contains("/@") && !path.contains("/video/");
+    }
+
+    /**
+     * Lists the videos of a playlist or channel without downloading them.
+     *
+     * @return The URLs of the entries, or just {@code url} if it is a single video or can't be listed.
+     */
+    public List<String> expandPlaylist(String url, Consumer<String> onProgress) throws IOException, InterruptedException {
+        File ytDlpExecutable = ensureYtDlpInstalled(onProgress);
+        // --flat-playlist lists the entries without extracting each of them; a single video has no playlist index
+        List<String> command = List.of(ytDlpExecutable.getAbsolutePath(), "--flat-playlist", "--ignore-errors",
+                "--print", "%(playlist_index)s %(url)s", url);
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        process.getOutputStream().close();
+
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space > 0 && !line.startsWith("NA ")) {
+                    String entry = line.substring(space + 1).trim();
+                    if (!entry.isEmpty() && !entry.equals("NA")) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        process.waitFor();
+        if (entries.isEmpty()) {
+            // Not a playlist, or listing failed; downloading it reports the actual problem
+            return List.of(url);
         }
+        onProgress.accept("Playlist " + url + " has " + entries.size() + " entries");
+        return entries;
     }
 
-    private File ensureYtDlpInstalled(Consumer<String> onProgress) throws IOException {
+    // Synchronized so concurrent downloads don't fetch yt-dlp at the same time
+    private synchronized File ensureYtDlpInstalled(Consumer<String> onProgress) throws IOException {
         String os = System.getProperty("os.name").toLowerCase();
         String executableName = "yt-dlp";
         String downloadUrl;
@@ -0,0 +1,92 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Combines the progress of the files in an ffmpeg batch, some of which run at the same time,
+ * into a single completed share and ETA for the whole batch.
+ */
+public class FfmpegBatchProgress {
+
+    // Too early to extrapolate an ETA from below this share
+    private static final double MIN_FRACTION_FOR_ETA = 0.02;
+
+    private final Map<File, Double> running = new ConcurrentHashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private volatile int total;
+    private volatile long startedAt = System.currentTimeMillis();
+
+    public FfmpegBatchProgress(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Starts over with a batch of the given size.
+     */
+    public void reset(int total) {
+        this.total = total;
+        running.clear();
+        completed.set(0);
+        startedAt = System.currentTimeMillis();
+    }
+
+    public void update(File inputFile, FfmpegProgress progress) {
+        double fraction = progress.fraction();
+        if (fraction >= 0) {
+            running.put(inputFile, fraction);
+        }
+    }
+
+    public void finished(File inputFile) {
+        running.remove(inputFile);
+        completed.incrementAndGet();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The completed share of the batch in the range 0-1, counting partly converted files.
+     */
+    public double fraction() {
+        int count = total;
+        if (count == 0) {
+            return 1;
+        }
+        double done = completed.get();
+        for (double fraction : running.values()) {
+            done += fraction;
+        }
+        return Math.min(1, done / count);
+    }
+
+    /**
+     * @return The estimated remaining time in seconds, extrapolated from the progress so far, or -1 if unknown.
+     */
+    public double etaSeconds() {
+        double fraction = fraction();
+        if (fraction < MIN_FRACTION_FOR_ETA) {
+            return -1;
+        }
+        double elapsed = (System.currentTimeMillis() - startedAt) / 1000.0;
+        return elapsed * (1 - fraction) / fraction;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%.1f%% (%d/%d files", fraction() * 100, completed.get(), total));
+        double eta = etaSeconds();
+        if (eta >= 0 && completed.get() < total) {
+            sb.append(", ETA ").append(TimeCode.format(eta));
+        }
+        return sb.append(')').toString();
+    }
+}
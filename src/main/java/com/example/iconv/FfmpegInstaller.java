@@ -58,4 +58,24 @@ public class FfmpegInstaller {
         }
         return ffmpegExe;
     }
+
+    /**
+     * @return The ffmpeg executable {@link #ensureFfmpegInstalled} would use, or {@code null} if it
+     *         still has to be installed. Never downloads anything.
+     */
+    public static File findInstalledFfmpeg() {
+        String os = System.getProperty("os.name").toLowerCase();
+        File ffmpeg = os.contains("win")
+                ? new File(System.getProperty("user.home"), ".iconv/ffmpeg-master-latest-win64-gpl/bin/ffmpeg.exe")
+                : new File("ffmpeg");
+        return (ffmpeg.canExecute()) ? ffmpeg : null;
+    }
+
+    /**
+     * @return The ffprobe executable that comes with the given ffmpeg executable.
+     */
+    public static File ffprobeFor(File ffmpegExecutable) {
+        String name = ffmpegExecutable.getName().toLowerCase().endsWith(".exe") ? "ffprobe.exe" : "ffprobe";
+        return new File(ffmpegExecutable.getAbsoluteFile().getParentFile(), name);
+    }
 }
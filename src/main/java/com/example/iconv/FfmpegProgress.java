@@ -0,0 +1,74 @@
+package com.example.iconv;
+
+/**
+ * A progress update of a running ffmpeg process, built from its {@code -progress} output.
+ * Percent and ETA are only known once the duration of the media being processed is known.
+ */
+public class FfmpegProgress {
+
+    public final double outTimeSeconds;
+    // The length of the media being produced, or -1 if unknown
+    public final double durationSeconds;
+    public final double fps;
+    // Processing speed relative to realtime, or 0 if unknown
+    public final double speed;
+    public final boolean done;
+
+    public FfmpegProgress(double outTimeSeconds, double durationSeconds, double fps, double speed, boolean done) {
+        this.outTimeSeconds = outTimeSeconds;
+        this.durationSeconds = durationSeconds;
+        this.fps = fps;
+        this.speed = speed;
+        this.done = done;
+    }
+
+    /**
+     * @return The completed share in the range 0-1, or -1 if unknown.
+     */
+    public double fraction() {
+        if (done) {
+            return 1;
+        }
+        if (durationSeconds <= 0) {
+            return -1;
+        }
+        return Math.min(1, Math.max(0, outTimeSeconds / durationSeconds));
+    }
+
+    public double percent() {
+        double fraction = fraction();
+        return (fraction < 0) ? -1 : fraction * 100;
+    }
+
+    /**
+     * @return The estimated remaining wall-clock time in seconds, or -1 if unknown.
+     */
+    public double etaSeconds() {
+        if (done) {
+            return 0;
+        }
+        if (durationSeconds <= 0 || speed <= 0) {
+            return -1;
+        }
+        return Math.max(0, durationSeconds - outTimeSeconds) / speed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double percent = percent();
+        if (percent >= 0) {
+            sb.append(String.format("%.1f%%", percent));
+        } else {
+            sb.append(TimeCode.format(outTimeSeconds));
+        }
+        if (speed > 0) {
+            sb.append(String.format(", %.2fx", speed));
+        }
+        double eta = etaSeconds();
+        if (eta >= 0 && !done) {
+            sb.append(", ETA ").append(TimeCode.format(eta));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.iconv;
+
+import java.util.function.Consumer;
+
+/**
+ * Turns the key=value lines ffmpeg writes with {@code -progress} into {@link FfmpegProgress} events.
+ * <p>
+ * ffmpeg writes a block of keys about twice a second and ends each block with {@code progress=continue},
+ * or {@code progress=end} for the last one. Events are forwarded at most once per {@code minIntervalMillis};
+ * the final event is always forwarded.
+ */
+public class FfmpegProgressParser {
+
+    // Four updates per second is smooth enough for a progress bar
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 250;
+
+    private static final String DURATION_PREFIX = "Duration: ";
+
+    private final Consumer<FfmpegProgress> listener;
+    private final long minIntervalMillis;
+    private final double clipStartSeconds;
+    private final double clipEndSeconds;
+
+    private volatile double inputDurationSeconds = -1;
+    private double outTimeSeconds;
+    private double fps;
+    private double speed;
+    private long lastEmitted;
+
+    /**
+     * @param clipStartSeconds Where in the input the output starts, or 0.
+     * @param clipEndSeconds   Where in the input the output ends, or 0 for the end of the input.
+     */
+    public FfmpegProgressParser(double clipStartSeconds, double clipEndSeconds, long minIntervalMillis, Consumer<FfmpegProgress> listener) {
+        this.clipStartSeconds = Math.max(0, clipStartSeconds);
+        this.clipEndSeconds = clipEndSeconds;
+        this.minIntervalMillis = minIntervalMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the duration of the whole input, e.g. as probed or as read from ffmpeg's log.
+     */
+    public void setInputDuration(double seconds) {
+        this.inputDurationSeconds = seconds;
+    }
+
+    public boolean hasInputDuration() {
+        return inputDurationSeconds > 0;
+    }
+
+    /**
+     * Picks up the input duration from an ffmpeg log line such as
+     * {@code   Duration: 00:03:25.04, start: 0.000000, bitrate: 1205 kb/s}, unless already known.
+     */
+    public void acceptLogLine(String line) {
+        if (hasInputDuration()) {
+            return;
+        }
+        int index = line.indexOf(DURATION_PREFIX);
+        if (index == -1) {
+            return;
+        }
+        int start = index + DURATION_PREFIX.length();
+        int end = line.indexOf(',', start);
+        double seconds = TimeCode.parseSeconds(line.substring(start, (end == -1) ? line.length() : end));
+        if (seconds > 0) {
+            setInputDuration(seconds);
+        }
+    }
+
+    /**
+     * Consumes one line of {@code -progress} output.
+     */
+    public void acceptProgressLine(String line) {
+        int eq = line.indexOf('=');
+        if (eq <= 0) {
+            return;
+        }
+        String key = line.substring(0, eq).trim();
+        String value = line.substring(eq + 1).trim();
+        switch (key) {
+            case "out_time_us":
+            case "out_time_ms": // Despite the name, also microseconds
+                long micros = parseLong(value);
+                if (micros >= 0) {
+                    outTimeSeconds = micros / 1_000_000.0;
+                }
+                break;
+            case "fps":
+                fps = Math.max(0, parseDouble(value));
+                break;
+            case "speed":
+                // e.g. "1.53x", or "N/A" at the start
+                speed = Math.max(0, parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value));
+                break;
+            case "progress":
+                emit("end".equals(value));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void emit(boolean done) {
+        long now = System.currentTimeMillis();
+        if (!done && now - lastEmitted < minIntervalMillis) {
+            return;
+        }
+        lastEmitted = now;
+        listener.accept(new FfmpegProgress(outTimeSeconds, clipDuration(), fps, speed, done));
+    }
+
+    private double clipDuration() {
+        double end = inputDurationSeconds;
+        if (clipEndSeconds > 0 && (end <= 0 || clipEndSeconds < end)) {
+            end = clipEndSeconds;
+        }
+        return (end > 0) ? Math.max(0, end - clipStartSeconds) : -1;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
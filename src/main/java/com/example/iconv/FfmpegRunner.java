@@ -0,0 +1,104 @@
+package com.example.iconv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs an ffmpeg command with machine-readable progress.
+ * <p>
+ * The process writes {@code -progress} key/value pairs to stdout, which are parsed into
+ * {@link FfmpegProgress} events, and its regular log to stderr. The log is only scanned for the
+ * input duration and kept as a short tail, which is reported if ffmpeg fails, so the UI log is not
+ * flooded with per-frame status lines.
+ */
+public final class FfmpegRunner {
+
+    // Log lines kept to explain a failure
+    private static final int LOG_TAIL_LINES = 20;
+
+    private FfmpegRunner() {
+    }
+
+    /**
+     * @param command          The ffmpeg executable followed by its arguments.
+     * @param clipStartSeconds Where in the input the output starts, or 0.
+     * @param clipEndSeconds   Where in the input the output ends, or 0 for the end of the input.
+     * @param onLog            Receives the log tail if ffmpeg fails.
+     * @param onProgress       Receives throttled progress events, or {@code null}.
+     * @throws IOException If ffmpeg cannot be started or exits with a non-zero code.
+     */
+    public static void run(List<String> command, double clipStartSeconds, double clipEndSeconds, Consumer<String> onLog, Consumer<FfmpegProgress> onProgress) throws IOException, InterruptedException {
+        run(command, -1, clipStartSeconds, clipEndSeconds, onLog, onProgress);
+    }
+
+    /**
+     * @param inputDurationSeconds The probed duration of the input, or -1 to take it from ffmpeg's log.
+     */
+    public static void run(List<String> command, double inputDurationSeconds, double clipStartSeconds, double clipEndSeconds, Consumer<String> onLog, Consumer<FfmpegProgress> onProgress) throws IOException, InterruptedException {
+        List<String> fullCommand = new ArrayList<>(command);
+        // Right after the executable, so the options apply globally
+        fullCommand.addAll(1, List.of("-hide_banner", "-nostats", "-progress", "pipe:1"));
+
+        FfmpegProgressParser parser = new FfmpegProgressParser(clipStartSeconds, clipEndSeconds,
+                FfmpegProgressParser.DEFAULT_MIN_INTERVAL_MILLIS, (onProgress != null) ? onProgress : progress -> { });
+        if (inputDurationSeconds > 0) {
+            parser.setInputDuration(inputDurationSeconds);
+        }
+
+        Process process = new ProcessBuilder(fullCommand).start();
+        process.getOutputStream().close();
+
+        ArrayDeque<String> logTail = new ArrayDeque<>();
+        // Reported after the process ends, since the reader thread can't throw to us
+        AtomicReference<IOException> logError = new AtomicReference<>();
+        Thread logReader = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parser.acceptLogLine(line);
+                    synchronized (logTail) {
+                        if (logTail.size() == LOG_TAIL_LINES) {
+                            logTail.removeFirst();
+                        }
+                        logTail.addLast(line);
+                    }
+                }
+            } catch (IOException e) {
+                logError.set(e);
+            }
+        }, "ffmpeg-log");
+        logReader.setDaemon(true);
+        logReader.start();
+
+        try {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parser.acceptProgressLine(line);
+                }
+            }
+            int exitCode = process.waitFor();
+            logReader.join();
+            if (exitCode != 0) {
+                synchronized (logTail) {
+                    logTail.forEach(onLog);
+                }
+                throw new IOException("ffmpeg exited with code " + exitCode);
+            }
+            if (logError.get() != null) {
+                throw new IOException("Could not read ffmpeg's log: " + logError.get().getMessage(), logError.get());
+            }
+        } finally {
+            if (process.isAlive()) {
+                // Interrupted or failed while reading; don't leave ffmpeg running
+                process.destroyForcibly();
+            }
+        }
+    }
+}
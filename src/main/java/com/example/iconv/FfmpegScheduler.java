@@ -0,0 +1,271 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Runs several ffmpeg jobs at once and splits a global thread budget between them.
+ * Each job is told how many threads it may use, which the converters pass on to ffmpeg via {@code -threads}.
+ * <p>
+ * Jobs with an estimated cost are started longest first, so the big files run alongside the small
+ * ones instead of alone at the end of the batch. Jobs without an estimate run in list order.
+ * <p>
+ * With {@link #setBatching} small jobs are grouped and each group is converted by one ffmpeg process
+ * with several inputs, so short files don't each pay for starting ffmpeg. If a group fails, its jobs
+ * are run again one by one, so a broken file only fails itself.
+ */
+public class FfmpegScheduler {
+
+    public enum Mode {
+        // Many concurrent processes with a couple of threads each; best for batches of short files
+        THROUGHPUT("Max throughput"),
+        // Few concurrent processes with many threads each; each individual file finishes sooner
+        LATENCY("Fastest per file");
+
+        private final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Threads given to each process in throughput mode; encoders scale poorly below this
+    private static final int THROUGHPUT_THREADS_PER_JOB = 2;
+    // Most ffmpeg encoders stop scaling well beyond this many threads
+    private static final int LATENCY_THREADS_PER_JOB = 8;
+    // Inputs up to this long take less time to convert than ffmpeg takes to start and probe them
+    public static final double SMALL_JOB_SECONDS = 30;
+    // Inputs per batched process; more save little and hold back results and retries
+    public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+    @FunctionalInterface
+    public interface Task {
+        void run(int threads) throws IOException, InterruptedException;
+    }
+
+    public static class Job {
+        final File inputFile;
+        final File outputDir;
+        final Task task;
+        // Estimated run time in any unit shared by the batch, or 0 if unknown
+        final double cost;
+
+        public Job(File inputFile, File outputDir, Task task) {
+            this(inputFile, outputDir, 0, task);
+        }
+
+        public Job(File inputFile, File outputDir, double cost, Task task) {
+            this.inputFile = inputFile;
+            this.outputDir = outputDir;
+            this.cost = cost;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Converts the inputs of several jobs in one ffmpeg process.
+     */
+    @FunctionalInterface
+    public interface BatchTask {
+        void run(List<Job> jobs, int threads) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Receives job lifecycle events. Callbacks are invoked from the scheduler's worker threads.
+     */
+    public interface Listener {
+        void onJobStarted(File inputFile, int threads);
+
+        /**
+         * @param error The failure, or {@code null} if the job completed successfully.
+         */
+        void onJobFinished(File inputFile, File outputDir, Exception error, int completed, int total);
+    }
+
+    public static class Result {
+        public final int successCount;
+        public final int failureCount;
+
+        Result(int successCount, int failureCount) {
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+        }
+    }
+
+    private final Mode mode;
+    private final int threadBudget;
+    private BatchTask batchTask;
+    private Predicate<Job> batchable;
+    private int maxBatchSize;
+
+    public FfmpegScheduler(Mode mode) {
+        this(mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FfmpegScheduler(Mode mode, int threadBudget) {
+        this.mode = mode;
+        this.threadBudget = Math.max(1, threadBudget);
+    }
+
+    /**
+     * Lets jobs accepted by {@code batchable} share ffmpeg processes, up to {@code maxBatchSize} per process.
+     */
+    public void setBatching(BatchTask batchTask, Predicate<Job> batchable, int maxBatchSize) {
+        this.batchTask = batchTask;
+        this.batchable = batchable;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return The number of ffmpeg processes to run at once for a batch of the given size.
+     */
+    public int slotCount(int jobCount) {
+        int threadsPerJob = (mode == Mode.THROUGHPUT) ? THROUGHPUT_THREADS_PER_JOB : LATENCY_THREADS_PER_JOB;
+        int slots = Math.max(1, threadBudget / Math.min(threadBudget, threadsPerJob));
+        return Math.max(1, Math.min(slots, jobCount));
+    }
+
+    /**
+     * @return The {@code -threads} value for each process when {@code slots} processes share the budget.
+     */
+    public int threadsPerJob(int slots) {
+        return Math.max(1, threadBudget / Math.max(1, slots));
+    }
+
+    public Result runAll(List<Job> jobs, Listener listener) throws InterruptedException {
+        int total = jobs.size();
+        if (total == 0) {
+            return new Result(0, 0);
+        }
+
+        List<List<Job>> units = group(longestFirst(jobs));
+        int unitCount = units.size();
+        int slots = slotCount(unitCount);
+        int threads = threadsPerJob(slots);
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger successCount = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(slots, workerThreadFactory());
+        try {
+            for (int s = 0; s < slots; s++) {
+                pool.execute(() -> {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < unitCount && !Thread.currentThread().isInterrupted()) {
+                        List<Job> unit = units.get(index);
+                        if (unit.size() > 1 && runBatch(unit, threads, listener, completed, successCount, total)) {
+                            continue;
+                        }
+                        // A failed group was already reported as started
+                        for (Job job : unit) {
+                            if (unit.size() == 1) {
+                                listener.onJobStarted(job.inputFile, threads);
+                            }
+                            Exception error = null;
+                            try {
+                                job.task.run(threads);
+                                successCount.incrementAndGet();
+                            } catch (InterruptedException ex) {
+                                error = ex;
+                                Thread.currentThread().interrupt();
+                            } catch (IOException | RuntimeException ex) {
+                                error = ex;
+                            }
+                            listener.onJobFinished(job.inputFile, job.outputDir, error, completed.incrementAndGet(), total);
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            // Interrupts running jobs if we were interrupted while waiting
+            pool.shutdownNow();
+        }
+
+        int succeeded = successCount.get();
+        return new Result(succeeded, completed.get() - succeeded);
+    }
+
+    /**
+     * Runs a group of jobs in one process and reports them as finished.
+     * @return {@code false} if the process failed and the jobs have to be run one by one.
+     */
+    private boolean runBatch(List<Job> unit, int threads, Listener listener, AtomicInteger completed, AtomicInteger successCount, int total) {
+        for (Job job : unit) {
+            listener.onJobStarted(job.inputFile, threads);
+        }
+        try {
+            batchTask.run(unit, threads);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            for (Job job : unit) {
+                listener.onJobFinished(job.inputFile, job.outputDir, ex, completed.incrementAndGet(), total);
+            }
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+        for (Job job : unit) {
+            successCount.incrementAndGet();
+            listener.onJobFinished(job.inputFile, job.outputDir, null, completed.incrementAndGet(), total);
+        }
+        return true;
+    }
+
+    /**
+     * Splits the jobs into units a slot runs at a time: single jobs, then groups of small jobs.
+     * Groups are kept small enough that every slot still gets some of them.
+     */
+    private List<List<Job>> group(List<Job> jobs) {
+        List<List<Job>> units = new ArrayList<>();
+        List<Job> small = new ArrayList<>();
+        for (Job job : jobs) {
+            if (batchTask != null && batchable.test(job)) {
+                small.add(job);
+            } else {
+                units.add(List.of(job));
+            }
+        }
+        if (small.isEmpty()) {
+            return units;
+        }
+        int slots = slotCount(units.size() + small.size());
+        int size = Math.max(1, Math.min(maxBatchSize, (small.size() + slots - 1) / slots));
+        for (int i = 0; i < small.size(); i += size) {
+            units.add(small.subList(i, Math.min(small.size(), i + size)));
+        }
+        return units;
+    }
+
+    // Slots take the next job whenever they become free, so handing them out longest first is the
+    // longest-processing-time rule; the sort is stable, so equal or unknown costs keep their order
+    private static List<Job> longestFirst(List<Job> jobs) {
+        List<Job> ordered = new ArrayList<>(jobs);
+        ordered.sort(Comparator.comparingDouble((Job job) -> job.cost).reversed());
+        return ordered;
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ffmpeg-slot-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
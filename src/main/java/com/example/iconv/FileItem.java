@@ -0,0 +1,46 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.nio.file.Path;
+
+// Wrapper class to store file and its base directory for relative path calculation
+public class FileItem {
+    final File file;
+    final File baseDir;
+
+    public FileItem(File file, File baseDir) {
+        this.file = file;
+        this.baseDir = baseDir;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The directory under {@code outputDir} that mirrors this file's location relative to its base directory.
+     */
+    public File mirroredOutputDir(File outputDir) {
+        Path relativePath = baseDir.toPath().relativize(file.toPath());
+        Path parentPath = relativePath.getParent();
+        return (parentPath != null) ? new File(outputDir, parentPath.toString()) : outputDir;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileItem fileItem = (FileItem) o;
+        return file.equals(fileItem.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
+}
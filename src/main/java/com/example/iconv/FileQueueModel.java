@@ -0,0 +1,257 @@
+package com.example.iconv;
+
+import javax.swing.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * List model for a conversion queue that stays small and fast with hundreds of thousands of files.
+ * <p>
+ * Instead of a {@link FileItem} with two {@link File}s per entry, base directories and the folders
+ * below them are interned once, and each entry is just a folder id plus the UTF-8 bytes of its file
+ * name relative to that folder, packed into one shared array. {@link FileItem}s are only created for
+ * the rows the list actually asks for.
+ * A hash index over the paths makes duplicate checks constant time, batches are added with a single
+ * list event, and status changes reported from worker threads are applied in bulk.
+ * <p>
+ * Apart from {@link #postStatus}, all methods must be called on the EDT.
+ */
+public class FileQueueModel extends AbstractListModel<FileItem> {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Status[] STATUSES = Status.values();
+
+    // Interned folders and the base directory each was added with, which may be null
+    private final List<File> folders = new ArrayList<>();
+    private final List<File> folderBaseDirs = new ArrayList<>();
+    private final Map<String, Integer> folderIds = new HashMap<>();
+
+    private int size;
+    private int[] folderIdOf = new int[INITIAL_CAPACITY];
+    // Entry i's file name is pathBytes[pathOffsets[i] .. pathOffsets[i + 1])
+    private int[] pathOffsets = new int[INITIAL_CAPACITY + 1];
+    private byte[] pathBytes = new byte[INITIAL_CAPACITY * 32];
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // Open-addressing index of entry number + 1 by absolute path hash, 0 meaning empty
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    private final ConcurrentLinkedQueue<Object[]> pendingStatuses = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean statusFlushScheduled = new AtomicBoolean();
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public FileItem getElementAt(int index) {
+        return new FileItem(getFile(index), getBaseDir(index));
+    }
+
+    public File getFile(int index) {
+        checkIndex(index);
+        return new File(folders.get(folderIdOf[index]), fileName(index));
+    }
+
+    public File getBaseDir(int index) {
+        checkIndex(index);
+        return folderBaseDirs.get(folderIdOf[index]);
+    }
+
+    public Status getStatus(int index) {
+        checkIndex(index);
+        return STATUSES[statuses[index]];
+    }
+
+    public boolean contains(File file) {
+        String path = file.getPath();
+        return find(path, path.hashCode()) >= 0;
+    }
+
+    /**
+     * Appends the items whose files are not queued yet, with a single list event.
+     * @return The number of items added.
+     */
+    public int addAllNew(Collection<FileItem> items) {
+        int first = size;
+        for (FileItem item : items) {
+            add(item);
+        }
+        if (size > first) {
+            fireIntervalAdded(this, first, size - 1);
+        }
+        return size - first;
+    }
+
+    public void clear() {
+        int oldSize = size;
+        folders.clear();
+        folderBaseDirs.clear();
+        folderIds.clear();
+        size = 0;
+        folderIdOf = new int[INITIAL_CAPACITY];
+        pathOffsets = new int[INITIAL_CAPACITY + 1];
+        pathBytes = new byte[INITIAL_CAPACITY * 32];
+        statuses = new byte[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        table = new int[INITIAL_CAPACITY * 2];
+        pendingStatuses.clear();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+    }
+
+    /**
+     * Marks every entry as queued again, e.g. before a new run.
+     */
+    public void resetStatuses() {
+        pendingStatuses.clear();
+        Arrays.fill(statuses, 0, size, (byte) Status.QUEUED.ordinal());
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * Updates the status of a file from any thread. Updates are collected and applied on the EDT
+     * with one change event covering all of them.
+     */
+    public void postStatus(File file, Status status) {
+        pendingStatuses.add(new Object[]{file, status});
+        if (statusFlushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flushStatuses);
+        }
+    }
+
+    private void flushStatuses() {
+        statusFlushScheduled.set(false);
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        Object[] update;
+        while ((update = pendingStatuses.poll()) != null) {
+            String path = ((File) update[0]).getPath();
+            int index = find(path, path.hashCode());
+            if (index >= 0) {
+                statuses[index] = (byte) ((Status) update[1]).ordinal();
+                min = Math.min(min, index);
+                max = Math.max(max, index);
+            }
+        }
+        if (max >= 0) {
+            fireContentsChanged(this, min, max);
+        }
+    }
+
+    private void add(FileItem item) {
+        String path = item.file.getPath();
+        int hash = path.hashCode();
+        // Grow first, since growing rebuilds the index and moves the free slots
+        ensureCapacity(size + 1);
+        int slot = find(path, hash);
+        if (slot >= 0) {
+            return;
+        }
+
+        File folder = item.file.getParentFile();
+        // Keyed by base directory too, as a folder may be queued below different base directories
+        String folderKey = ((folder != null) ? folder.getPath() : "") + File.pathSeparatorChar + ((item.baseDir != null) ? item.baseDir.getPath() : "");
+        int folderId = folderIds.computeIfAbsent(folderKey, key -> {
+            folders.add(folder);
+            folderBaseDirs.add(item.baseDir);
+            return folders.size() - 1;
+        });
+
+        byte[] bytes = item.file.getName().getBytes(StandardCharsets.UTF_8);
+        int offset = pathOffsets[size];
+        if (offset + bytes.length > pathBytes.length) {
+            pathBytes = Arrays.copyOf(pathBytes, Math.max(pathBytes.length * 2, offset + bytes.length));
+        }
+        System.arraycopy(bytes, 0, pathBytes, offset, bytes.length);
+        pathOffsets[size + 1] = offset + bytes.length;
+        folderIdOf[size] = folderId;
+        statuses[size] = (byte) Status.QUEUED.ordinal();
+        hashes[size] = hash;
+        table[-slot - 1] = size + 1;
+        size++;
+    }
+
+    /**
+     * @return The entry with the given path, or {@code -(slot + 1)} for the free table slot where it belongs.
+     */
+    private int find(String path, int hash) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int index = entry - 1;
+            if (hashes[index] == hash && absolutePath(index).equals(path)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(slot + 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > folderIdOf.length) {
+            int newCapacity = folderIdOf.length * 2;
+            folderIdOf = Arrays.copyOf(folderIdOf, newCapacity);
+            pathOffsets = Arrays.copyOf(pathOffsets, newCapacity + 1);
+            statuses = Arrays.copyOf(statuses, newCapacity);
+            hashes = Arrays.copyOf(hashes, newCapacity);
+        }
+        // Keep the index at most half full
+        if (capacity * 2 > table.length) {
+            int[] newTable = new int[table.length * 2];
+            int mask = newTable.length - 1;
+            for (int index = 0; index < size; index++) {
+                int slot = mix(hashes[index]) & mask;
+                while (newTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable[slot] = index + 1;
+            }
+            table = newTable;
+        }
+    }
+
+    private String fileName(int index) {
+        int offset = pathOffsets[index];
+        return new String(pathBytes, offset, pathOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+    }
+
+    private String absolutePath(int index) {
+        return getFile(index).getPath();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    // Spreads String hash codes, whose low bits cluster for similar paths
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
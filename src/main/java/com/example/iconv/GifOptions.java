@@ -0,0 +1,52 @@
+package com.example.iconv;
+
+/**
+ * Frame rate, size and dithering of GIFs created from videos.
+ */
+public class GifOptions {
+
+    public enum Dither {
+        // Error diffusion with little noise; ffmpeg's default
+        SIERRA("Sierra", "sierra2_4a"),
+        FLOYD_STEINBERG("Floyd-Steinberg", "floyd_steinberg"),
+        // Ordered dithering; a regular pattern, but compresses better and doesn't shimmer between frames
+        BAYER("Bayer", "bayer:bayer_scale=3"),
+        NONE("None", "none");
+
+        private final String label;
+        final String filterValue;
+
+        Dither(String label, String filterValue) {
+            this.label = label;
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public static final int DEFAULT_FPS = 10;
+    public static final int DEFAULT_WIDTH = 320;
+
+    public final int fps;
+    // Output width in pixels, or 0 to keep the width of the video
+    public final int width;
+    public final Dither dither;
+
+    public GifOptions(int fps, int width, Dither dither) {
+        this.fps = fps;
+        this.width = width;
+        this.dither = dither;
+    }
+
+    public static GifOptions defaults() {
+        return new GifOptions(DEFAULT_FPS, DEFAULT_WIDTH, Dither.SIERRA);
+    }
+
+    @Override
+    public String toString() {
+        return fps + "fps " + ((width > 0) ? width + "px" : "original size") + " " + dither.name().toLowerCase();
+    }
+}
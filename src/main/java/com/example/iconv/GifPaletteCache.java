@@ -0,0 +1,95 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Keeps the palettes generated for GIFs under {@code ~/.iconv/palettes}, so a GIF can be made again
+ * with a different size, frame rate or dithering without analysing the source again.
+ * <p>
+ * Palettes are analysed at a fixed frame rate and width, so they only depend on the input file and
+ * the clip range. An input counts as the same while its path, size and modification time are.
+ */
+public class GifPaletteCache {
+
+    // Palettes are generated from frames at this rate and width, whatever the GIF settings are
+    static final int ANALYSIS_FPS = 10;
+    static final int ANALYSIS_WIDTH = 320;
+    // Bump when the way palettes are generated changes, so old palettes are no longer used
+    private static final int ANALYSIS_VERSION = 1;
+    // Palettes are 1 KB each; beyond this many the least recently used are deleted
+    private static final int MAX_PALETTES = 500;
+
+    private final File dir;
+    private volatile boolean dirCreated;
+
+    public GifPaletteCache(File dir) {
+        this.dir = dir;
+    }
+
+    public static File defaultDir() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "palettes");
+    }
+
+    /**
+     * @return Where the palette for the clip is or would be stored; use it if it exists.
+     */
+    public File paletteFile(File inputFile, double clipStart, double clipEnd) {
+        String key = String.join("|", inputFile.getAbsolutePath(), String.valueOf(inputFile.length()),
+                String.valueOf(inputFile.lastModified()), String.format(Locale.ROOT, "%.3f-%.3f", Math.max(0, clipStart), Math.max(0, clipEnd)),
+                String.valueOf(ANALYSIS_VERSION));
+        return new File(dir, sha256(key) + ".png");
+    }
+
+    /**
+     * @return A file in the cache directory to generate a palette into before moving it to {@code paletteFile}.
+     */
+    public File temporaryFile(File paletteFile) {
+        if (!dirCreated) {
+            dir.mkdirs();
+            dirCreated = true;
+        }
+        // ffmpeg picks the format from the extension, so it has to stay .png
+        return new File(dir, paletteFile.getName().replace(".png", "." + Thread.currentThread().getId() + ".tmp.png"));
+    }
+
+    /**
+     * Marks a cached palette as used, so it is kept over palettes that weren't used for longer.
+     */
+    public void touch(File paletteFile) {
+        paletteFile.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the least recently used palettes beyond the cache limit.
+     */
+    public void prune() {
+        File[] palettes = dir.listFiles((d, name) -> name.endsWith(".png") && !name.endsWith(".tmp.png"));
+        if (palettes == null || palettes.length <= MAX_PALETTES) {
+            return;
+        }
+        Arrays.sort(palettes, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < palettes.length - MAX_PALETTES; i++) {
+            palettes[i].delete();
+        }
+    }
+
+    private static String sha256(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converts a batch of images on a fixed pool of worker threads, one per available core by default.
+ * Workers pull the next task from a shared index, so the pool never holds more than one pending
+ * task per thread no matter how large the batch is.
+ */
+public class ImageBatchConverter {
+
+    /**
+     * Receives per-file and aggregate progress. Callbacks are invoked from worker threads.
+     */
+    public interface Listener {
+        void onFileStarted(File inputFile);
+
+        /**
+         * @param error     The failure, or {@code null} if the file was converted successfully.
+         * @param completed The number of files finished so far, including this one.
+         * @param total     The number of files in the batch.
+         */
+        void onFileFinished(File inputFile, File outputDir, Exception error, int completed, int total);
+    }
+
+    // A single file to convert and the directory its output should be written to
+    public static class Task {
+        final File inputFile;
+        final File outputDir;
+
+        public Task(File inputFile, File outputDir) {
+            this.inputFile = inputFile;
+            this.outputDir = outputDir;
+        }
+    }
+
+    public static class Result {
+        public final int successCount;
+        public final int failureCount;
+        public final File lastOutputDir;
+
+        Result(int successCount, int failureCount, File lastOutputDir) {
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+            this.lastOutputDir = lastOutputDir;
+        }
+    }
+
+    private final ImageConverter converter;
+    private final int threadCount;
+
+    public ImageBatchConverter() {
+        this(new ImageConverter(), Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImageBatchConverter(ImageConverter converter, int threadCount) {
+        this.converter = converter;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public Result convertAll(List<Task> tasks, String outputFormat, int resizeWidth, int resizeHeight, Listener listener) throws InterruptedException {
+        return convertAll(tasks, outputFormat, resizeWidth, resizeHeight, ImageResizer.Filter.LANCZOS, listener);
+    }
+
+    public Result convertAll(List<Task> tasks, String outputFormat, int resizeWidth, int resizeHeight, ImageResizer.Filter resizeFilter, Listener listener) throws InterruptedException {
+        int total = tasks.size();
+        if (total == 0) {
+            return new Result(0, 0, null);
+        }
+
+        // Mirrored folders are created here, so workers writing into the same new folder don't race
+        Set<File> outputDirs = new LinkedHashSet<>();
+        tasks.forEach(task -> outputDirs.add(task.outputDir));
+        for (File outputDir : outputDirs) {
+            try {
+                Files.createDirectories(outputDir.toPath());
+            } catch (IOException e) {
+                // Each file in it fails with the cause when it is converted
+            }
+        }
+
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger successCount = new AtomicInteger();
+        AtomicReference<File> lastOutputDir = new AtomicReference<>();
+
+        int workerCount = Math.min(threadCount, total);
+        ExecutorService pool = Executors.newFixedThreadPool(workerCount, workerThreadFactory());
+        try {
+            for (int w = 0; w < workerCount; w++) {
+                pool.execute(() -> {
+                    // Each worker keeps its own readers, writers and pixel buffers across files, within
+                    // its share of the pool budget; the workers already fill the cores, so they resize serially
+                    try (ImageConversionSession session = new ImageConversionSession(workerCount)) {
+                        int index;
+                        while ((index = nextIndex.getAndIncrement()) < total && !Thread.currentThread().isInterrupted()) {
+                            Task task = tasks.get(index);
+                            listener.onFileStarted(task.inputFile);
+                            Exception error = null;
+                            try {
+                                converter.convert(task.inputFile, outputFormat, task.outputDir, resizeWidth, resizeHeight, resizeFilter, session);
+                                successCount.incrementAndGet();
+                                lastOutputDir.set(task.outputDir);
+                            } catch (IOException | RuntimeException ex) {
+                                error = ex;
+                            }
+                            listener.onFileFinished(task.inputFile, task.outputDir, error, completed.incrementAndGet(), total);
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            // Stops the workers if we were interrupted while waiting
+            pool.shutdownNow();
+        }
+
+        int succeeded = successCount.get();
+        return new Result(succeeded, completed.get() - succeeded, lastOutputDir.get());
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "image-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
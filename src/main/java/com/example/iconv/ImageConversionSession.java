@@ -0,0 +1,194 @@
+package com.example.iconv;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-worker cache of image readers, writers and pixel buffers.
+ * <p>
+ * {@link ImageIO#read} and {@link ImageIO#write} run a service lookup and allocate fresh images on
+ * every call, which dominates batches of small files. A session keeps one reader per input extension
+ * and one writer per output format, and hands out destination images and scratch arrays from pools
+ * keyed by size and type, so repeated same-size conversions allocate almost nothing.
+ * <p>
+ * Sessions are not thread-safe; each worker thread should own one. Sessions of a batch split the pool
+ * budget between them and resize on their own thread, since the batch already keeps every core busy.
+ */
+public class ImageConversionSession implements AutoCloseable {
+
+    // Pooled images and scratch arrays beyond this many bytes, shared by all workers of a batch, are
+    // left to the garbage collector
+    private static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    private static final int SCRATCH_SLOTS = 4;
+
+    private final Map<String, ImageReader> readers = new HashMap<>();
+    private final Map<String, ImageWriter> writers = new HashMap<>();
+    private final Map<ImageKey, ArrayDeque<BufferedImage>> imagePool = new HashMap<>();
+    private final int[][] scratch = new int[SCRATCH_SLOTS][];
+    private final long maxPooledBytes;
+    private final boolean parallelResize;
+    private long pooledBytes;
+
+    public ImageConversionSession() {
+        this(1);
+    }
+
+    /**
+     * @param workers The number of worker threads with a session of their own.
+     */
+    public ImageConversionSession(int workers) {
+        this.maxPooledBytes = MAX_POOLED_BYTES / Math.max(1, workers);
+        this.parallelResize = workers <= 1;
+    }
+
+    /**
+     * @return Whether resizing may split an image across the common pool, which only pays off
+     *         when this is the only worker.
+     */
+    public boolean resizesInParallel() {
+        return parallelResize;
+    }
+
+    /**
+     * Returns a reader for the stream, reusing the one that last decoded a file with the same extension
+     * if it can decode this one too. The reader stays owned by the session; call {@link ImageReader#reset()}
+     * when done instead of disposing it.
+     * @return The reader, or {@code null} if no installed reader supports the stream.
+     */
+    public ImageReader reader(ImageInputStream stream, String extension) throws IOException {
+        String key = extension.toLowerCase();
+        ImageReader cached = readers.get(key);
+        if (cached != null && cached.getOriginatingProvider() != null && cached.getOriginatingProvider().canDecodeInput(stream)) {
+            return cached;
+        }
+        Iterator<ImageReader> found = ImageIO.getImageReaders(stream);
+        if (!found.hasNext()) {
+            return null;
+        }
+        ImageReader reader = found.next();
+        ImageReader previous = readers.put(key, reader);
+        if (previous != null) {
+            previous.dispose();
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the session's writer for the format. Call {@link ImageWriter#reset()} when done.
+     * @return The writer, or {@code null} if no installed writer supports the format.
+     */
+    public ImageWriter writer(String format) {
+        String key = format.toLowerCase();
+        ImageWriter writer = writers.get(key);
+        if (writer == null) {
+            Iterator<ImageWriter> found = ImageIO.getImageWritersByFormatName(key);
+            if (!found.hasNext()) {
+                return null;
+            }
+            writer = found.next();
+            writers.put(key, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Takes an image of the given size and standard type from the pool, or creates one.
+     * Pooled images keep their previous contents.
+     */
+    public BufferedImage image(int width, int height, int imageType) {
+        return image(width, height, ImageTypeSpecifier.createFromBufferedImageType(imageType));
+    }
+
+    public BufferedImage image(int width, int height, ImageTypeSpecifier type) {
+        ArrayDeque<BufferedImage> pooled = imagePool.get(new ImageKey(width, height, type));
+        if (pooled != null && !pooled.isEmpty()) {
+            BufferedImage image = pooled.pop();
+            pooledBytes -= sizeOf(image);
+            return image;
+        }
+        return type.createBufferedImage(width, height);
+    }
+
+    /**
+     * Returns an image obtained from {@link #image} to the pool.
+     */
+    public void release(BufferedImage image, ImageTypeSpecifier type) {
+        long size = sizeOf(image);
+        if (pooledBytes + size > maxPooledBytes) {
+            return;
+        }
+        imagePool.computeIfAbsent(new ImageKey(image.getWidth(), image.getHeight(), type), k -> new ArrayDeque<>()).push(image);
+        pooledBytes += size;
+    }
+
+    public void release(BufferedImage image) {
+        release(image, ImageTypeSpecifier.createFromBufferedImageType(image.getType()));
+    }
+
+    /**
+     * Returns a scratch array of at least {@code length} ints. Each slot holds one array that is
+     * grown as needed, so callers must use distinct slots for arrays that are live at the same time.
+     * Arrays too big for the slot's share of the pool budget are handed out but not kept.
+     */
+    public int[] intBuffer(int slot, int length) {
+        int[] buffer = scratch[slot];
+        if (buffer == null || buffer.length < length) {
+            buffer = new int[length];
+            scratch[slot] = ((long) length * Integer.BYTES <= maxPooledBytes / SCRATCH_SLOTS) ? buffer : null;
+        }
+        return buffer;
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * Math.max(1, DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+
+    @Override
+    public void close() {
+        readers.values().forEach(ImageReader::dispose);
+        writers.values().forEach(ImageWriter::dispose);
+        readers.clear();
+        writers.clear();
+        imagePool.clear();
+        Arrays.fill(scratch, null);
+        pooledBytes = 0;
+    }
+
+    private static final class ImageKey {
+        private final int width;
+        private final int height;
+        private final ImageTypeSpecifier type;
+
+        ImageKey(int width, int height, ImageTypeSpecifier type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ImageKey other = (ImageKey) o;
+            return width == other.width && height == other.height && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, type);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.example.iconv;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -14,61 +21,199 @@ public class ImageConverter {
     // Formats that do not support transparency
     private static final Set<String> FORMATS_WITHOUT_ALPHA = new HashSet<>(Arrays.asList("jpg", "jpeg", "bmp"));
 
+    // When subsampling during decode, keep at least this many source pixels per target pixel for the final resize
+    private static final int SUBSAMPLING_HEADROOM = 3;
+
+    // Default memory budget for one streaming conversion
+    public static final long DEFAULT_TILE_BUDGET_BYTES = 64L * 1024 * 1024;
+    // Images whose decoded size exceeds this share of the maximum heap are streamed automatically
+    private static final double STREAMING_HEAP_FRACTION = 0.25;
+
+    private boolean streamingForced;
+    private long tileBudgetBytes = DEFAULT_TILE_BUDGET_BYTES;
+
+    /**
+     * Always use the banded streaming path for output formats that support it, instead of only
+     * for images too large to decode in memory.
+     */
+    public void setStreamingForced(boolean streamingForced) {
+        this.streamingForced = streamingForced;
+    }
+
+    /**
+     * Sets the memory budget for the decoded bands of a single streaming conversion.
+     */
+    public void setTileBudgetBytes(long tileBudgetBytes) {
+        this.tileBudgetBytes = tileBudgetBytes;
+    }
+
     public void convert(File inputFile, String outputFormat, File outputDir, int resizeWidth, int resizeHeight) throws IOException {
+        convert(inputFile, outputFormat, outputDir, resizeWidth, resizeHeight, ImageResizer.Filter.LANCZOS);
+    }
+
+    public void convert(File inputFile, String outputFormat, File outputDir, int resizeWidth, int resizeHeight, ImageResizer.Filter resizeFilter) throws IOException {
+        try (ImageConversionSession session = new ImageConversionSession()) {
+            convert(inputFile, outputFormat, outputDir, resizeWidth, resizeHeight, resizeFilter, session);
+        }
+    }
+
+    /**
+     * Converts using the readers, writers and buffers cached in {@code session}, which batch workers keep between files.
+     */
+    public void convert(File inputFile, String outputFormat, File outputDir, int resizeWidth, int resizeHeight, ImageResizer.Filter resizeFilter, ImageConversionSession session) throws IOException {
         if (!inputFile.exists()) {
             throw new IOException("Input file does not exist: " + inputFile.getAbsolutePath());
         }
 
-        if (!outputDir.exists()) {
-            if (!outputDir.mkdirs()) {
-                throw new IOException("Could not create output directory: " + outputDir.getAbsolutePath());
+        try {
+            // Safe when batch workers create the same directory at once
+            Files.createDirectories(outputDir.toPath());
+        } catch (IOException e) {
+            throw new IOException("Could not create output directory: " + outputDir.getAbsolutePath(), e);
+        }
+
+        String fileName = inputFile.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        File outputFile = getOutputFile(inputFile, outputFormat, outputDir);
+        boolean flattenAlpha = FORMATS_WITHOUT_ALPHA.contains(outputFormat.toLowerCase());
+
+        String extension = (dotIndex == -1) ? "" : fileName.substring(dotIndex + 1);
+        try (ImageInputStream stream = ImageIO.createImageInputStream(inputFile)) {
+            ImageReader reader = (stream != null) ? session.reader(stream, extension) : null;
+            if (reader == null) {
+                throw new IOException("Could not read input image: " + inputFile.getAbsolutePath());
+            }
+            try {
+                // Streaming reads the source several times, so the stream must stay seekable
+                reader.setInput(stream, false, true);
+                // Only the header is read here
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (shouldStream(width, height, resizeWidth, resizeHeight, outputFormat)) {
+                    new StreamingImageConverter(tileBudgetBytes, session.resizesInParallel()).convert(reader, outputFormat, outputFile, resizeWidth, resizeHeight, resizeFilter, flattenAlpha);
+                } else {
+                    convertInMemory(session, reader, width, height, outputFormat, outputFile, resizeWidth, resizeHeight, resizeFilter, flattenAlpha);
+                }
+            } finally {
+                // The session keeps the reader for the next file
+                reader.reset();
             }
         }
 
-        BufferedImage inputImage = ImageIO.read(inputFile);
-        if (inputImage == null) {
-            throw new IOException("Could not read input image: " + inputFile.getAbsolutePath());
+        System.out.println("Converted " + inputFile.getName() + " to " + outputFile.getAbsolutePath());
+    }
+
+    /**
+     * @return The file {@link #convert} writes for the given input.
+     */
+    public File getOutputFile(File inputFile, String outputFormat, File outputDir) {
+        String fileName = inputFile.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
+        return new File(outputDir, nameWithoutExtension + "." + outputFormat);
+    }
+
+    private void convertInMemory(ImageConversionSession session, ImageReader reader, int width, int height, String outputFormat, File outputFile, int resizeWidth, int resizeHeight, ImageResizer.Filter resizeFilter, boolean flattenAlpha) throws IOException {
+        // When the target is much smaller than the source, skip rows and columns while decoding
+        // so the full-size image never has to fit in memory
+        ImageReadParam param = reader.getDefaultReadParam();
+        int subsampling = 1;
+        if (resizeWidth > 0 && resizeHeight > 0) {
+            subsampling = subsamplingFactor(width, height, resizeWidth, resizeHeight);
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
         }
 
+        // Decode into a pooled image of the reader's default type
+        ImageTypeSpecifier decodedType = reader.getImageTypes(0).next();
+        BufferedImage decoded = session.image((width + subsampling - 1) / subsampling, (height + subsampling - 1) / subsampling, decodedType);
+        param.setDestination(decoded);
+        reader.read(0, param);
+
+        BufferedImage inputImage = decoded;
+        BufferedImage resized = null;
+        BufferedImage flattened = null;
+
         // Resize the image if dimensions are provided
         if (resizeWidth > 0 && resizeHeight > 0) {
-            Image resultingImage = inputImage.getScaledInstance(resizeWidth, resizeHeight, Image.SCALE_SMOOTH);
-            BufferedImage outputImage = new BufferedImage(resizeWidth, resizeHeight, inputImage.getType());
-            outputImage.getGraphics().drawImage(resultingImage, 0, 0, null);
-            inputImage = outputImage;
+            resized = new ImageResizer(resizeFilter, session).resize(inputImage, resizeWidth, resizeHeight);
+            inputImage = resized;
         }
 
         BufferedImage finalImage = inputImage;
 
         // Check if we need to handle transparency
         boolean hasAlpha = inputImage.getTransparency() != Transparency.OPAQUE;
-        if (hasAlpha && FORMATS_WITHOUT_ALPHA.contains(outputFormat.toLowerCase())) {
-            finalImage = removeAlphaChannel(inputImage);
+        if (hasAlpha && flattenAlpha) {
+            flattened = removeAlphaChannel(inputImage, session);
+            finalImage = flattened;
         }
 
-        String fileName = inputFile.getName();
-        int dotIndex = fileName.lastIndexOf('.');
-        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
-
-        File outputFile = new File(outputDir, nameWithoutExtension + "." + outputFormat);
+        try {
+            writeImage(session, finalImage, outputFormat, outputFile);
+        } finally {
+            session.release(decoded, decodedType);
+            if (resized != null) {
+                session.release(resized);
+            }
+            if (flattened != null) {
+                session.release(flattened);
+            }
+        }
+    }
 
-        boolean result = ImageIO.write(finalImage, outputFormat, outputFile);
-        if (!result) {
+    private void writeImage(ImageConversionSession session, BufferedImage image, String outputFormat, File outputFile) throws IOException {
+        ImageWriter writer = session.writer(outputFormat);
+        if (writer == null || !writer.getOriginatingProvider().canEncodeImage(image)) {
             // This can happen if no writer is found for the format
             throw new IOException("Could not write image in format '" + outputFormat + "'. Please ensure the format is supported.");
         }
+        // The output stream writes in place, so remove any previous, possibly longer, file first
+        Files.deleteIfExists(outputFile.toPath());
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(outputFile)) {
+            if (output == null) {
+                throw new IOException("Could not open output file: " + outputFile.getAbsolutePath());
+            }
+            writer.setOutput(output);
+            writer.write(image);
+        } finally {
+            writer.reset();
+        }
+    }
 
-        System.out.println("Converted " + inputFile.getName() + " to " + outputFile.getAbsolutePath());
+    private boolean shouldStream(int width, int height, int resizeWidth, int resizeHeight, String outputFormat) {
+        if (!StreamingImageConverter.supportsFormat(outputFormat)) {
+            return false;
+        }
+        if (streamingForced) {
+            return true;
+        }
+        long decodedWidth = width;
+        long decodedHeight = height;
+        if (resizeWidth > 0 && resizeHeight > 0) {
+            int subsampling = subsamplingFactor(width, height, resizeWidth, resizeHeight);
+            decodedWidth = (width + subsampling - 1) / subsampling;
+            decodedHeight = (height + subsampling - 1) / subsampling;
+        }
+        // Decoded image plus its packed int copy
+        long estimatedBytes = decodedWidth * decodedHeight * 8;
+        return estimatedBytes > Runtime.getRuntime().maxMemory() * STREAMING_HEAP_FRACTION;
+    }
+
+    static int subsamplingFactor(int width, int height, int targetWidth, int targetHeight) {
+        int factor = Math.min(width / (targetWidth * SUBSAMPLING_HEADROOM), height / (targetHeight * SUBSAMPLING_HEADROOM));
+        return Math.max(1, factor);
     }
 
     /**
-     * Draws an image with transparency onto a new image with a solid white background.
+     * Draws an image with transparency onto a pooled image with a solid white background.
      * @param source The image with an alpha channel.
-     * @return A new image with the transparency removed.
+     * @return An image with the transparency removed, to be released back to the session.
      */
-    private BufferedImage removeAlphaChannel(BufferedImage source) {
-        // Create a new image with the same dimensions but an RGB color model (no alpha)
-        BufferedImage newImage = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+    private BufferedImage removeAlphaChannel(BufferedImage source, ImageConversionSession session) {
+        // Take an image with the same dimensions but an RGB color model (no alpha)
+        BufferedImage newImage = session.image(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
 
         // Create a graphics context for the new image
         Graphics2D g2d = newImage.createGraphics();
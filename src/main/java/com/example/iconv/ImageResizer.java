@@ -0,0 +1,462 @@
+package com.example.iconv;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Resizes images by separable convolution directly on packed ARGB int arrays.
+ * <p>
+ * Large downscales first shrink the image with an integer box reduction until it is at most
+ * {@link #REDUCING_GAP} times the target size, then the selected filter does the final step.
+ * Both passes are split into row bands that run in parallel once the image is big enough, unless
+ * the resizer belongs to a batch worker whose siblings already use the other cores.
+ * Transparent images are filtered with premultiplied alpha so edges don't pick up dark fringes.
+ */
+public class ImageResizer {
+
+    public enum Filter {
+        BILINEAR("Bilinear", 1.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                return x < 1.0 ? 1.0 - x : 0.0;
+            }
+        },
+        BICUBIC("Bicubic", 2.0) {
+            @Override
+            double weight(double x) {
+                // Catmull-Rom style cubic (a = -0.5)
+                final double a = -0.5;
+                x = Math.abs(x);
+                if (x < 1.0) {
+                    return ((a + 2.0) * x - (a + 3.0)) * x * x + 1.0;
+                }
+                if (x < 2.0) {
+                    return (((x - 5.0) * x + 8.0) * x - 4.0) * a;
+                }
+                return 0.0;
+            }
+        },
+        LANCZOS("Lanczos", 3.0) {
+            @Override
+            double weight(double x) {
+                if (x == 0.0) {
+                    return 1.0;
+                }
+                if (x <= -3.0 || x >= 3.0) {
+                    return 0.0;
+                }
+                double px = Math.PI * x;
+                return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+            }
+        };
+
+        private final String label;
+        final double radius;
+
+        Filter(String label, double radius) {
+            this.label = label;
+            this.radius = radius;
+        }
+
+        abstract double weight(double x);
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // The box reduction stops once the image is within this factor of the target size
+    static final int REDUCING_GAP = 2;
+    // Fixed-point precision of the filter weights
+    private static final int PRECISION_BITS = 14;
+    private static final int ROUNDING = 1 << (PRECISION_BITS - 1);
+    // Rows per parallel band, and the pixel count below which splitting isn't worth it
+    private static final int BAND_HEIGHT = 64;
+    private static final long PARALLEL_THRESHOLD = 1L << 20;
+
+    // Scratch slots used in the session's buffer pool
+    private static final int SLOT_PIXELS = 0;
+    private static final int SLOT_REDUCED = 1;
+    private static final int SLOT_INTERMEDIATE = 2;
+
+    private final Filter filter;
+    private final ImageConversionSession session;
+    private final boolean parallel;
+
+    public ImageResizer(Filter filter) {
+        this(filter, null);
+    }
+
+    /**
+     * @param session Supplies reusable scratch buffers, or {@code null} to allocate them per call.
+     */
+    public ImageResizer(Filter filter, ImageConversionSession session) {
+        this.filter = filter;
+        this.session = session;
+        this.parallel = session == null || session.resizesInParallel();
+    }
+
+    /**
+     * Resizes an image of any type. The result is {@code TYPE_INT_ARGB} if the source has an
+     * alpha channel and {@code TYPE_INT_RGB} otherwise.
+     */
+    public BufferedImage resize(BufferedImage source, int width, int height) {
+        boolean alpha = source.getColorModel().hasAlpha();
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage output = (session != null) ? session.image(width, height, type) : new BufferedImage(width, height, type);
+        resize(source, output);
+        return output;
+    }
+
+    /**
+     * Resizes {@code source} to fill {@code output}, which must be {@code TYPE_INT_ARGB} or {@code TYPE_INT_RGB}.
+     */
+    public void resize(BufferedImage source, BufferedImage output) {
+        boolean alpha = output.getType() == BufferedImage.TYPE_INT_ARGB;
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int[] pixels = packedPixels(source, alpha);
+        if (alpha) {
+            premultiply(pixels, srcWidth, srcHeight, parallel);
+        }
+
+        // Cheap integer box reduction for the bulk of a large downscale
+        int dstWidth = output.getWidth();
+        int dstHeight = output.getHeight();
+        int factorX = Math.max(1, srcWidth / (dstWidth * REDUCING_GAP));
+        int factorY = Math.max(1, srcHeight / (dstHeight * REDUCING_GAP));
+        if (factorX > 1 || factorY > 1) {
+            int reducedWidth = (srcWidth + factorX - 1) / factorX;
+            int reducedHeight = (srcHeight + factorY - 1) / factorY;
+            int[] reduced = buffer(SLOT_REDUCED, reducedWidth * reducedHeight);
+            boxReduce(pixels, srcWidth, srcHeight, reduced, reducedWidth, reducedHeight, factorX, factorY, parallel);
+            pixels = reduced;
+            srcWidth = reducedWidth;
+            srcHeight = reducedHeight;
+        }
+
+        int[] target = packedData(output);
+        if (srcWidth == dstWidth && srcHeight == dstHeight) {
+            System.arraycopy(pixels, 0, target, 0, srcWidth * srcHeight);
+        } else {
+            Coefficients horizontal = Coefficients.compute(filter, srcWidth, dstWidth);
+            Coefficients vertical = Coefficients.compute(filter, srcHeight, dstHeight);
+            int[] intermediate = buffer(SLOT_INTERMEDIATE, dstWidth * srcHeight);
+            int[] src = pixels;
+            int srcW = srcWidth;
+            forEachBand(parallel, srcHeight, (long) srcW * srcHeight, (from, to) -> horizontalPass(src, srcW, from, to, intermediate, dstWidth, horizontal));
+            forEachBand(parallel, dstHeight, (long) dstWidth * dstHeight, (from, to) -> verticalPass(intermediate, 0, target, 0, dstWidth, from, to, vertical));
+        }
+        if (alpha) {
+            unpremultiply(target);
+        }
+    }
+
+    private int[] buffer(int slot, int length) {
+        return (session != null) ? session.intBuffer(slot, length) : new int[length];
+    }
+
+    /**
+     * Like {@link #toPackedPixels}, but takes the working copy from the session's scratch buffers.
+     */
+    private int[] packedPixels(BufferedImage source, boolean alpha) {
+        if (session == null) {
+            return toPackedPixels(source, alpha);
+        }
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int length = source.getWidth() * source.getHeight();
+        int[] pixels = session.intBuffer(SLOT_PIXELS, length);
+        if (source.getType() == type && isUnpadded(source)) {
+            System.arraycopy(packedData(source), 0, pixels, 0, length);
+            return pixels;
+        }
+        BufferedImage converted = session.image(source.getWidth(), source.getHeight(), type);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        System.arraycopy(packedData(converted), 0, pixels, 0, length);
+        session.release(converted);
+        return pixels;
+    }
+
+    @FunctionalInterface
+    interface BandTask {
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * @param parallel Whether the bands may run on the common pool; otherwise the caller's thread does all rows.
+     */
+    static void forEachBand(boolean parallel, int rows, long pixelCount, BandTask task) {
+        int bands = (rows + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (!parallel || bands <= 1 || pixelCount < PARALLEL_THRESHOLD) {
+            task.run(0, rows);
+            return;
+        }
+        IntStream.range(0, bands).parallel().forEach(band -> task.run(band * BAND_HEIGHT, Math.min(rows, (band + 1) * BAND_HEIGHT)));
+    }
+
+    /**
+     * Precomputed fixed-point filter taps for mapping {@code inSize} samples onto {@code outSize}.
+     */
+    static final class Coefficients {
+        final int[] start;
+        final int[] count;
+        final int[] weights;
+        final int stride;
+
+        private Coefficients(int[] start, int[] count, int[] weights, int stride) {
+            this.start = start;
+            this.count = count;
+            this.weights = weights;
+            this.stride = stride;
+        }
+
+        static Coefficients compute(Filter filter, int inSize, int outSize) {
+            double scale = (double) inSize / outSize;
+            double filterScale = Math.max(scale, 1.0);
+            double support = filter.radius * filterScale;
+            int stride = (int) Math.ceil(support) * 2 + 1;
+
+            int[] start = new int[outSize];
+            int[] count = new int[outSize];
+            int[] weights = new int[outSize * stride];
+            double[] row = new double[stride];
+            for (int out = 0; out < outSize; out++) {
+                double center = (out + 0.5) * scale;
+                int min = Math.max((int) (center - support + 0.5), 0);
+                int max = Math.min((int) (center + support + 0.5), inSize);
+                int n = Math.min(max - min, stride);
+                double total = 0.0;
+                for (int i = 0; i < n; i++) {
+                    double w = filter.weight((i + min - center + 0.5) / filterScale);
+                    row[i] = w;
+                    total += w;
+                }
+                for (int i = 0; i < n; i++) {
+                    weights[out * stride + i] = (int) Math.round((total != 0.0 ? row[i] / total : 0.0) * (1 << PRECISION_BITS));
+                }
+                start[out] = min;
+                count[out] = n;
+            }
+            return new Coefficients(start, count, weights, stride);
+        }
+    }
+
+    /**
+     * Filters rows {@code [fromRow, toRow)} of {@code src} horizontally into the same rows of {@code dst}.
+     */
+    static void horizontalPass(int[] src, int srcWidth, int fromRow, int toRow, int[] dst, int dstWidth, Coefficients c) {
+        for (int y = fromRow; y < toRow; y++) {
+            int srcRow = y * srcWidth;
+            int dstRow = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int a = ROUNDING, r = ROUNDING, g = ROUNDING, b = ROUNDING;
+                int base = srcRow + c.start[x];
+                int wOffset = x * c.stride;
+                for (int i = 0, n = c.count[x]; i < n; i++) {
+                    int p = src[base + i];
+                    int w = c.weights[wOffset + i];
+                    a += (p >>> 24) * w;
+                    r += ((p >> 16) & 0xFF) * w;
+                    g += ((p >> 8) & 0xFF) * w;
+                    b += (p & 0xFF) * w;
+                }
+                dst[dstRow + x] = pack(a, r, g, b);
+            }
+        }
+    }
+
+    /**
+     * Filters output rows {@code [fromRow, toRow)} vertically. {@code src} holds source rows starting at
+     * {@code srcRowOffset}, and {@code dst} receives output rows starting at {@code dstRowOffset}.
+     */
+    static void verticalPass(int[] src, int srcRowOffset, int[] dst, int dstRowOffset, int width, int fromRow, int toRow, Coefficients c) {
+        // Accumulate a whole row at a time so the source is read sequentially
+        int[] a = new int[width];
+        int[] r = new int[width];
+        int[] g = new int[width];
+        int[] b = new int[width];
+        for (int y = fromRow; y < toRow; y++) {
+            Arrays.fill(a, ROUNDING);
+            Arrays.fill(r, ROUNDING);
+            Arrays.fill(g, ROUNDING);
+            Arrays.fill(b, ROUNDING);
+            int wOffset = y * c.stride;
+            int srcRow = (c.start[y] - srcRowOffset) * width;
+            for (int i = 0, n = c.count[y]; i < n; i++, srcRow += width) {
+                int w = c.weights[wOffset + i];
+                for (int x = 0; x < width; x++) {
+                    int p = src[srcRow + x];
+                    a[x] += (p >>> 24) * w;
+                    r[x] += ((p >> 16) & 0xFF) * w;
+                    g[x] += ((p >> 8) & 0xFF) * w;
+                    b[x] += (p & 0xFF) * w;
+                }
+            }
+            int dstRow = (y - dstRowOffset) * width;
+            for (int x = 0; x < width; x++) {
+                dst[dstRow + x] = pack(a[x], r[x], g[x], b[x]);
+            }
+        }
+    }
+
+    private static int pack(int a, int r, int g, int b) {
+        return (clamp(a >> PRECISION_BITS) << 24) | (clamp(r >> PRECISION_BITS) << 16) | (clamp(g >> PRECISION_BITS) << 8) | clamp(b >> PRECISION_BITS);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    static void boxReduce(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight, int factorX, int factorY, boolean parallel) {
+        // Two 8-bit channels are summed side by side in 16-bit lanes while a block holds at most this many pixels
+        boolean packedSums = factorX * factorY <= 257;
+        forEachBand(parallel, dstHeight, (long) srcWidth * srcHeight, (from, to) -> {
+            // Column sums for one output row, so each source row is read sequentially
+            int[] ag = new int[dstWidth];
+            int[] rb = new int[dstWidth];
+            int[] a = packedSums ? null : new int[dstWidth];
+            int[] r = packedSums ? null : new int[dstWidth];
+            int[] g = packedSums ? null : new int[dstWidth];
+            int[] b = packedSums ? null : new int[dstWidth];
+            int[] column = new int[srcWidth];
+            for (int sx = 0; sx < srcWidth; sx++) {
+                column[sx] = sx / factorX;
+            }
+            for (int y = from; y < to; y++) {
+                int y0 = y * factorY;
+                int y1 = Math.min(y0 + factorY, srcHeight);
+                if (packedSums) {
+                    Arrays.fill(ag, 0);
+                    Arrays.fill(rb, 0);
+                    for (int sy = y0; sy < y1; sy++) {
+                        int index = sy * srcWidth;
+                        for (int sx = 0; sx < srcWidth; sx++) {
+                            int p = src[index + sx];
+                            int x = column[sx];
+                            ag[x] += (p >>> 8) & 0x00FF00FF;
+                            rb[x] += p & 0x00FF00FF;
+                        }
+                    }
+                } else {
+                    Arrays.fill(a, 0);
+                    Arrays.fill(r, 0);
+                    Arrays.fill(g, 0);
+                    Arrays.fill(b, 0);
+                    for (int sy = y0; sy < y1; sy++) {
+                        int index = sy * srcWidth;
+                        for (int sx = 0; sx < srcWidth; sx++) {
+                            int p = src[index + sx];
+                            int x = column[sx];
+                            a[x] += p >>> 24;
+                            r[x] += (p >> 16) & 0xFF;
+                            g[x] += (p >> 8) & 0xFF;
+                            b[x] += p & 0xFF;
+                        }
+                    }
+                }
+
+                // Divide by multiplying with a fixed-point reciprocal; only edge blocks differ in size
+                int rows = y1 - y0;
+                long fullScale = (1L << 32) / ((long) rows * factorX);
+                int dstRow = y * dstWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int columns = Math.min(factorX, srcWidth - x * factorX);
+                    long scale = (columns == factorX) ? fullScale : (1L << 32) / ((long) rows * columns);
+                    int sa, sr, sg, sb;
+                    if (packedSums) {
+                        sa = ag[x] >>> 16;
+                        sg = ag[x] & 0xFFFF;
+                        sr = rb[x] >>> 16;
+                        sb = rb[x] & 0xFFFF;
+                    } else {
+                        sa = a[x];
+                        sr = r[x];
+                        sg = g[x];
+                        sb = b[x];
+                    }
+                    dst[dstRow + x] = (int) ((sa * scale + (1L << 31)) >>> 32) << 24
+                            | (int) ((sr * scale + (1L << 31)) >>> 32) << 16
+                            | (int) ((sg * scale + (1L << 31)) >>> 32) << 8
+                            | (int) ((sb * scale + (1L << 31)) >>> 32);
+                }
+            }
+        });
+    }
+
+    static void premultiply(int[] pixels, int width, int height, boolean parallel) {
+        forEachBand(parallel, height, (long) width * height, (from, to) -> {
+            for (int i = from * width, end = to * width; i < end; i++) {
+                int p = pixels[i];
+                int a = p >>> 24;
+                if (a == 255) {
+                    continue;
+                }
+                int r = ((p >> 16) & 0xFF) * a / 255;
+                int g = ((p >> 8) & 0xFF) * a / 255;
+                int b = (p & 0xFF) * a / 255;
+                pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        });
+    }
+
+    static void unpremultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            int p = pixels[i];
+            int a = p >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            if (a == 0) {
+                pixels[i] = 0;
+                continue;
+            }
+            int r = Math.min(255, ((p >> 16) & 0xFF) * 255 / a);
+            int g = Math.min(255, ((p >> 8) & 0xFF) * 255 / a);
+            int b = Math.min(255, (p & 0xFF) * 255 / a);
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Returns the image as packed ARGB (or RGB) pixels. Images that are already in the right
+     * layout are returned without conversion; everything else, including
+     * {@code TYPE_CUSTOM} images, is drawn into a new int image first.
+     */
+    static int[] toPackedPixels(BufferedImage source, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (source.getType() == type && isUnpadded(source)) {
+            // Premultiplying works in place, so never hand out the source's own pixels for that
+            return alpha ? packedData(source).clone() : packedData(source);
+        }
+        BufferedImage converted = new BufferedImage(width, height, type);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        return packedData(converted);
+    }
+
+    private static boolean isUnpadded(BufferedImage image) {
+        if (!(image.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) image.getSampleModel();
+        return model.getScanlineStride() == image.getWidth()
+                && image.getRaster().getDataBuffer().getSize() == image.getWidth() * image.getHeight();
+    }
+
+    static int[] packedData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
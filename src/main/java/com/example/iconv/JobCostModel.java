@@ -0,0 +1,188 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Estimates how long an ffmpeg job will take, so {@link FfmpegScheduler} can start the longest jobs
+ * first and a big file doesn't end up running alone at the end of a batch.
+ * <p>
+ * A job's work is its probed duration, weighted by frame size for videos, or its file size when it
+ * hasn't been probed. The seconds per unit of work are learned per input codec and output profile
+ * from completed jobs as an exponentially weighted moving average, and kept in
+ * {@code ~/.iconv/costs.properties}. Jobs that copy streams or convert a clip cost far less per unit
+ * than full re-encodes, so callers give them a variant that is learned separately.
+ */
+public class JobCostModel {
+
+    // Weight of the newest observation in the moving average
+    private static final double SMOOTHING = 0.3;
+    // Starting points before anything was learned: thread-seconds per megapixel-second of video,
+    // per second of audio, and per megabyte of unprobed input
+    private static final double DEFAULT_PER_MEGAPIXEL_SECOND = 0.05;
+    private static final double DEFAULT_PER_AUDIO_SECOND = 0.005;
+    private static final double DEFAULT_PER_MEGABYTE = 0.35;
+    // Jobs quicker than this are mostly process start-up and say little about the codec
+    private static final double MIN_OBSERVED_SECONDS = 0.5;
+
+    private static JobCostModel shared;
+
+    private final File file;
+    private final Map<String, Double> secondsPerUnit = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private JobCostModel(File file) {
+        this.file = file;
+    }
+
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "costs.properties");
+    }
+
+    /**
+     * @return The model backed by {@link #defaultFile()}, loaded on first use.
+     */
+    public static synchronized JobCostModel shared() {
+        if (shared == null) {
+            shared = load(defaultFile());
+        }
+        return shared;
+    }
+
+    /**
+     * Loads the model from {@code file}. A missing or unreadable file gives the default costs.
+     */
+    public static JobCostModel load(File file) {
+        JobCostModel model = new JobCostModel(file);
+        if (!file.exists()) {
+            return model;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable cost model " + file + ": " + e.getMessage());
+            return model;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                double value = Double.parseDouble(properties.getProperty(key));
+                if (value > 0) {
+                    model.secondsPerUnit.put(key, value);
+                }
+            } catch (NumberFormatException e) {
+                // Skip the broken line but keep the rest
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Gives each job its estimated cost and wraps its task so the actual time teaches the model.
+     *
+     * @param profile What the jobs produce, e.g. {@code "video mp4"}; costs are learned per profile.
+     */
+    public List<FfmpegScheduler.Job> withEstimates(List<FfmpegScheduler.Job> jobs, String profile) {
+        return withEstimates(jobs, profile, probe -> "");
+    }
+
+    /**
+     * Like {@link #withEstimates(List, String)}, with costs learned separately per variant.
+     *
+     * @param variant How a job's input is converted beyond a plain re-encode, e.g. {@code "copy.mp4"};
+     *                an empty string for a plain re-encode. It is given the job's probe, or {@code null}.
+     */
+    public List<FfmpegScheduler.Job> withEstimates(List<FfmpegScheduler.Job> jobs, String profile, Function<MediaProbe, String> variant) {
+        List<FfmpegScheduler.Job> estimated = new ArrayList<>(jobs.size());
+        for (FfmpegScheduler.Job job : jobs) {
+            MediaProbe probe = MediaProbeCache.shared().getIfCurrent(job.inputFile);
+            String jobVariant = variant.apply(probe);
+            String key = key(probe, jobVariant.isEmpty() ? profile : profile + " " + jobVariant);
+            double units = units(probe, job.inputFile);
+            double cost = secondsPerUnit.getOrDefault(key, defaultSecondsPerUnit(probe)) * units;
+            FfmpegScheduler.Task task = job.task;
+            estimated.add(new FfmpegScheduler.Job(job.inputFile, job.outputDir, cost, threads -> {
+                long started = System.nanoTime();
+                task.run(threads);
+                learn(key, units, (System.nanoTime() - started) / 1e9, threads);
+            }));
+        }
+        return estimated;
+    }
+
+    private void learn(String key, double units, double seconds, int threads) {
+        if (units <= 0 || seconds < MIN_OBSERVED_SECONDS) {
+            return;
+        }
+        // Thread-seconds, so batches run with different thread counts teach the same coefficient
+        double observed = seconds * Math.max(1, threads) / units;
+        secondsPerUnit.merge(key, observed, (old, current) -> old + SMOOTHING * (current - old));
+        dirty = true;
+    }
+
+    /**
+     * Writes the model if anything was learned since it was loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Properties properties = new Properties();
+        secondsPerUnit.forEach((key, value) -> properties.setProperty(key, String.valueOf(value)));
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            properties.store(out, "iConv job cost model: thread-seconds per unit of work");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(MediaProbe probe, String profile) {
+        String source;
+        if (probe == null || probe.durationSeconds <= 0) {
+            source = "size";
+        } else if (probe.hasStreamOfType("video")) {
+            source = "video." + probe.streamsOfType("video").get(0).codec;
+        } else if (probe.hasStreamOfType("audio")) {
+            source = "audio." + probe.streamsOfType("audio").get(0).codec;
+        } else {
+            source = "other";
+        }
+        return (profile + "." + source).replace(' ', '.');
+    }
+
+    // Megapixel-seconds of video, seconds of audio, or megabytes when the file wasn't probed
+    private static double units(MediaProbe probe, File inputFile) {
+        if (probe == null || probe.durationSeconds <= 0) {
+            return inputFile.length() / 1e6;
+        }
+        if (probe.hasStreamOfType("video")) {
+            MediaProbe.Stream video = probe.streamsOfType("video").get(0);
+            // Treat an unknown frame size like 720p
+            double megapixels = (video.width > 0 && video.height > 0) ? video.width * (double) video.height / 1e6 : 0.92;
+            return probe.durationSeconds * megapixels;
+        }
+        return probe.durationSeconds;
+    }
+
+    private static double defaultSecondsPerUnit(MediaProbe probe) {
+        if (probe == null || probe.durationSeconds <= 0) {
+            return DEFAULT_PER_MEGABYTE;
+        }
+        return probe.hasStreamOfType("video") ? DEFAULT_PER_MEGAPIXEL_SECOND : DEFAULT_PER_AUDIO_SECOND;
+    }
+}
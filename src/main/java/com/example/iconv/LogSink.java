@@ -0,0 +1,179 @@
+package com.example.iconv;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds log messages from any thread into a text area without flooding the event dispatch thread.
+ * <p>
+ * Messages are queued lock-free and appended in one batch per frame by a Swing timer, which only
+ * runs while messages are waiting. The text area keeps only the most recent lines, and its queue is
+ * bounded, so a process printing thousands of lines per second neither stalls the UI nor grows memory
+ * without limit. Optionally every message is also written to a {@link RotatingLogFile} on a
+ * background thread, from a queue of its own, so the file gets the lines the text area drops.
+ */
+public class LogSink {
+
+    private static final int FRAMES_PER_SECOND = 30;
+    // Lines kept in the text area
+    public static final int DEFAULT_MAX_LINES = 5000;
+    // Messages buffered for the text area between two frames before the oldest are dropped
+    private static final int MAX_PENDING = 100_000;
+
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    // Length of each line shown, including its newline, oldest first; only used on the EDT
+    private final ArrayDeque<Integer> lineLengths = new ArrayDeque<>();
+    private final Timer timer;
+    // Messages not written to the log file yet, and whether the writer is about to take them
+    private final ConcurrentLinkedQueue<String> filePending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean fileWriteScheduled = new AtomicBoolean();
+    private final ExecutorService fileWriter;
+    private volatile RotatingLogFile logFile;
+
+    public LogSink(JTextArea textArea) {
+        this(textArea, DEFAULT_MAX_LINES);
+    }
+
+    public LogSink(JTextArea textArea, int maxLines) {
+        this.textArea = textArea;
+        this.maxLines = Math.max(1, maxLines);
+        // Started by the first message after a flush, so an idle log costs nothing
+        this.timer = new Timer(1000 / FRAMES_PER_SECOND, e -> flush());
+        this.timer.setRepeats(false);
+        // A coalescing timer drops a tick that fires while the previous flush still runs
+        this.timer.setCoalesce(false);
+        this.fileWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a message. Safe to call from any thread.
+     */
+    public void log(String message) {
+        if (logFile != null) {
+            filePending.offer(message);
+            if (fileWriteScheduled.compareAndSet(false, true)) {
+                fileWriter.execute(this::writeFile);
+            }
+        }
+        pending.offer(message);
+        int count = pendingCount.incrementAndGet();
+        if (count == 1) {
+            timer.start();
+        } else if (count > MAX_PENDING && pending.poll() != null) {
+            pendingCount.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Also writes all messages to {@code file}, or stops doing so if {@code null}.
+     */
+    public void setLogFile(RotatingLogFile file) {
+        RotatingLogFile previous = logFile;
+        logFile = file;
+        if (previous != null) {
+            fileWriter.execute(() -> {
+                try {
+                    previous.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close log file: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Clears the text area, including the messages not shown yet. Must be called on the event dispatch thread.
+     */
+    public void clear() {
+        while (pending.poll() != null) {
+            pendingCount.decrementAndGet();
+        }
+        dropped.set(0);
+        textArea.setText("");
+        lineLengths.clear();
+    }
+
+    // Runs on the file writer thread
+    private void writeFile() {
+        // Cleared first, so a message queued while writing schedules another run
+        fileWriteScheduled.set(false);
+        List<String> batch = new ArrayList<>();
+        String message;
+        while ((message = filePending.poll()) != null) {
+            batch.add(message);
+        }
+        RotatingLogFile file = logFile;
+        if (batch.isEmpty() || file == null) {
+            return;
+        }
+        try {
+            file.append(batch);
+        } catch (IOException e) {
+            System.err.println("Could not write log file " + file.getFile() + ": " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (pendingCount.get() == 0) {
+            return;
+        }
+        List<String> batch = new ArrayList<>();
+        String message;
+        while ((message = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(message);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        int droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            // Only from the text area; the log file has them
+            batch.add(0, "... " + droppedCount + " log lines dropped ...");
+        }
+
+        // Lines that would be trimmed right away are never inserted
+        int first = Math.max(0, batch.size() - maxLines);
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < batch.size(); i++) {
+            String line = batch.get(i);
+            text.append(line).append('\n');
+            lineLengths.addLast(line.length() + 1);
+        }
+
+        Document document = textArea.getDocument();
+        try {
+            document.insertString(document.getLength(), text.toString(), null);
+            int excess = 0;
+            while (lineLengths.size() > maxLines) {
+                excess += lineLengths.removeFirst();
+            }
+            if (excess > 0) {
+                document.remove(0, Math.min(excess, document.getLength()));
+            }
+        } catch (BadLocationException e) {
+            // Only happens if the document was modified behind our back
+            clear();
+        }
+        textArea.setCaretPosition(document.getLength());
+    }
+}
@@ -1,23 +1,13 @@
 package com.example.iconv;
 
-import com.formdev.flatlaf.FlatDarkLaf;
-
-import javax.swing.*;
-
 public class Main {
     public static void main(String[] args) {
-        // Set the FlatLaf look and feel
-        try {
-            UIManager.setLookAndFeel(new FlatDarkLaf());
-        } catch (UnsupportedLookAndFeelException e) {
-            System.err.println("Failed to initialize FlatLaf look and feel.");
-            e.printStackTrace();
+        // Command-line mode never touches Swing, so it runs on headless machines and starts quickly
+        if (CommandLine.isCommand(args)) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(new CommandLine(System.out, System.err).run(args));
         }
 
-        // Run the application
-        SwingUtilities.invokeLater(() -> {
-            MainWindow window = new MainWindow();
-            window.setVisible(true);
-        });
+        MainWindow.launch();
     }
 }
@@ -13,72 +13,107 @@ import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class MainWindow extends JFrame {
 
-    // Wrapper class to store file and its base directory for relative path calculation
-    private static class FileItem {
-        final File file;
-        final File baseDir;
-
-        FileItem(File file, File baseDir) {
-            this.file = file;
-            this.baseDir = baseDir;
-        }
-
-        @Override
-        public String toString() {
-            return file.getName();
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            FileItem fileItem = (FileItem) o;
-            return file.equals(fileItem.file);
-        }
-
-        @Override
-        public int hashCode() {
-            return file.hashCode();
-        }
-    }
-
     private JList<FileItem> imageConversionList;
-    private DefaultListModel<FileItem> imageConversionListModel;
+    private FileQueueModel imageConversionListModel;
     private JList<FileItem> videoConversionList;
-    private DefaultListModel<FileItem> videoConversionListModel;
+    private FileQueueModel videoConversionListModel;
     private JList<FileItem> audioConversionList;
-    private DefaultListModel<FileItem> audioConversionListModel;
+    private FileQueueModel audioConversionListModel;
     private JTextField outputDirField;
     private JComboBox<String> imageFormatBox;
     private JComboBox<String> videoFormatBox;
     private JComboBox<String> audioFormatBox;
+    private JComboBox<FfmpegScheduler.Mode> videoScheduleModeBox;
+    private JComboBox<FfmpegScheduler.Mode> audioScheduleModeBox;
     private JTextArea logArea;
-    private JTextField urlField;
+    private LogSink logSink;
+    private JTextArea urlArea;
+    private JSpinner parallelDownloadsSpinner;
+    private JSpinner perSiteDownloadsSpinner;
+    private JSpinner fragmentsSpinner;
+    private JComboBox<String> downloadConvertBox;
+    private JSpinner downloadConvertJobsSpinner;
+    private DefaultListModel<DownloadQueue.Item> downloadListModel;
+    private JList<DownloadQueue.Item> downloadList;
+    private JButton downloadButton;
     private JCheckBox audioOnlyCheckbox;
     private JComboBox<String> qualityBox;
     private JProgressBar downloadProgressBar;
-    private static final Pattern PROGRESS_PATTERN = Pattern.compile("Download progress: (\\d+\\.\\d+)%.*");
+    private JProgressBar imageProgressBar;
+    private JProgressBar videoProgressBar;
+    private JProgressBar audioProgressBar;
+    private static final long LOG_FILE_MAX_BYTES = 10L * 1024 * 1024;
+    private static final int LOG_FILE_BACKUPS = 3;
+    // The same default as the command line and ImageConverter
+    private static final int DEFAULT_TILE_BUDGET_MB = (int) (ImageConverter.DEFAULT_TILE_BUDGET_BYTES / (1024 * 1024));
+    // Resolution of the ffmpeg batch progress bars
+    private static final int PROGRESS_BAR_STEPS = 1000;
     private JSpinner resizeWidthSpinner;
     private JSpinner resizeHeightSpinner;
+    private JComboBox<ImageResizer.Filter> resizeFilterBox;
+    private JCheckBox streamingCheckbox;
+    private JSpinner tileBudgetSpinner;
+    private JCheckBox imageIncrementalCheckbox;
+    private JCheckBox streamCopyCheckbox;
+    private JCheckBox chunkedEncodingCheckbox;
+    private JCheckBox videoIncrementalCheckbox;
+    private JCheckBox audioIncrementalCheckbox;
+    private JCheckBox contentHashCheckbox;
+    // Mirrors contentHashCheckbox for the batch threads
+    private volatile boolean contentHashing;
+    private ConversionManifest conversionManifest;
     private JTextField startTimeField;
     private JTextField endTimeField;
+    private JComboBox<VideoConverter.TrimMode> trimModeBox;
     private JCheckBox createGifCheckbox;
+    private final Map<String, JCheckBox> extraVideoFormatCheckboxes = new LinkedHashMap<>();
+    private JSpinner gifFpsSpinner;
+    private JSpinner gifWidthSpinner;
+    private JComboBox<GifOptions.Dither> gifDitherBox;
+    private JComboBox<String> audioSampleRateBox;
+    private JComboBox<String> audioChannelsBox;
+    private JComboBox<String> audioBitDepthBox;
     private JCheckBox watermarkCheckbox;
     private JTextField watermarkTextField;
 
 
+    /**
+     * Sets the FlatLaf look and feel and opens the window.
+     */
+    public static void launch() {
+        // Set the FlatLaf look and feel
+        try {
+            UIManager.setLookAndFeel(new FlatDarkLaf());
+        } catch (UnsupportedLookAndFeelException e) {
+            System.err.println("Failed to initialize FlatLaf look and feel.");
+            e.printStackTrace();
+        }
+
+        // Run the application
+        SwingUtilities.invokeLater(() -> {
+            MainWindow window = new MainWindow();
+            window.setVisible(true);
+            window.offerDownloadResume();
+        });
+    }
+
     public MainWindow() {
         // Set up the look and feel from Main.java
         setTitle("iConv - The Ultimate Media Converter");
@@ -129,6 +164,15 @@ public class MainWindow extends JFrame {
             SwingUtilities.updateComponentTreeUI(this);
         });
         JPanel themePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JCheckBox logFileCheckbox = new JCheckBox("Save log");
+        logFileCheckbox.setToolTipText("Also write the log to " + RotatingLogFile.defaultFile().getAbsolutePath());
+        logFileCheckbox.addActionListener(e -> logSink.setLogFile(logFileCheckbox.isSelected()
+                ? new RotatingLogFile(RotatingLogFile.defaultFile(), LOG_FILE_MAX_BYTES, LOG_FILE_BACKUPS) : null));
+        contentHashCheckbox = new JCheckBox("Compare contents");
+        contentHashCheckbox.setToolTipText("When skipping unchanged files, hash files that were touched but kept their size before reconverting them");
+        contentHashCheckbox.addItemListener(e -> contentHashing = contentHashCheckbox.isSelected());
+        themePanel.add(contentHashCheckbox);
+        themePanel.add(logFileCheckbox);
         themePanel.add(themeToggleButton);
         topPanel.add(themePanel, BorderLayout.EAST);
         
@@ -148,6 +192,7 @@ public class MainWindow extends JFrame {
         logArea.setRows(10);
         logArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         logArea.setMargin(new Insets(5, 5, 5, 5));
+        logSink = new LogSink(logArea);
         JScrollPane logScroll = new JScrollPane(logArea);
         logScroll.setBorder(BorderFactory.createTitledBorder("Log"));
         mainPanel.add(logScroll, BorderLayout.SOUTH);
@@ -173,26 +218,60 @@ public class MainWindow extends JFrame {
         if (videoFormatBox != null && videoFormatBox.getItemCount() > 0) videoFormatBox.setSelectedIndex(0);
         if (audioFormatBox != null && audioFormatBox.getItemCount() > 0) audioFormatBox.setSelectedIndex(0);
         if (qualityBox != null && qualityBox.getItemCount() > 0) qualityBox.setSelectedIndex(0);
+        if (videoScheduleModeBox != null) videoScheduleModeBox.setSelectedItem(FfmpegScheduler.Mode.THROUGHPUT);
+        if (audioScheduleModeBox != null) audioScheduleModeBox.setSelectedItem(FfmpegScheduler.Mode.THROUGHPUT);
 
         // Reset Inputs
         if (resizeWidthSpinner != null) resizeWidthSpinner.setValue(0);
         if (resizeHeightSpinner != null) resizeHeightSpinner.setValue(0);
+        if (resizeFilterBox != null) resizeFilterBox.setSelectedItem(ImageResizer.Filter.LANCZOS);
+        if (tileBudgetSpinner != null) tileBudgetSpinner.setValue(DEFAULT_TILE_BUDGET_MB);
+        if (streamingCheckbox != null) streamingCheckbox.setSelected(false);
+        if (imageIncrementalCheckbox != null) imageIncrementalCheckbox.setSelected(false);
+        if (videoIncrementalCheckbox != null) videoIncrementalCheckbox.setSelected(false);
+        if (audioIncrementalCheckbox != null) audioIncrementalCheckbox.setSelected(false);
+        if (contentHashCheckbox != null) contentHashCheckbox.setSelected(false);
         if (startTimeField != null) startTimeField.setText("00:00:00");
         if (endTimeField != null) endTimeField.setText("");
-        if (urlField != null) urlField.setText("");
+        if (trimModeBox != null) trimModeBox.setSelectedItem(VideoConverter.TrimMode.ACCURATE);
+        if (urlArea != null) urlArea.setText("");
+        if (parallelDownloadsSpinner != null) parallelDownloadsSpinner.setValue(DownloadQueue.DEFAULT_MAX_CONCURRENT);
+        if (perSiteDownloadsSpinner != null) perSiteDownloadsSpinner.setValue(DownloadQueue.DEFAULT_PER_HOST_LIMIT);
+        if (fragmentsSpinner != null) fragmentsSpinner.setValue(4);
+        if (downloadConvertBox != null) downloadConvertBox.setSelectedIndex(0);
+        if (downloadConvertJobsSpinner != null) downloadConvertJobsSpinner.setValue(DownloadConversion.DEFAULT_CONCURRENCY);
         
         // Reset Checkboxes
         if (createGifCheckbox != null) createGifCheckbox.setSelected(false);
+        extraVideoFormatCheckboxes.values().forEach(checkbox -> checkbox.setSelected(false));
+        if (gifFpsSpinner != null) gifFpsSpinner.setValue(GifOptions.DEFAULT_FPS);
+        if (gifWidthSpinner != null) gifWidthSpinner.setValue(GifOptions.DEFAULT_WIDTH);
+        if (gifDitherBox != null) gifDitherBox.setSelectedItem(GifOptions.Dither.SIERRA);
+        if (audioSampleRateBox != null) audioSampleRateBox.setSelectedIndex(0);
+        if (audioChannelsBox != null) audioChannelsBox.setSelectedIndex(0);
+        if (audioBitDepthBox != null) audioBitDepthBox.setSelectedIndex(0);
+        if (streamCopyCheckbox != null) streamCopyCheckbox.setSelected(true);
+        if (chunkedEncodingCheckbox != null) chunkedEncodingCheckbox.setSelected(false);
         if (audioOnlyCheckbox != null) audioOnlyCheckbox.setSelected(false);
 
         // Clear Log
-        if (logArea != null) logArea.setText("");
+        if (logSink != null) logSink.clear();
         
         // Reset Progress
         if (downloadProgressBar != null) {
             downloadProgressBar.setValue(0);
             downloadProgressBar.setString(null);
         }
+        if (imageProgressBar != null) {
+            imageProgressBar.setValue(0);
+            imageProgressBar.setString(null);
+        }
+        for (JProgressBar bar : new JProgressBar[]{videoProgressBar, audioProgressBar}) {
+            if (bar != null) {
+                bar.setValue(0);
+                bar.setString(null);
+            }
+        }
 
         log("Application reset to defaults.");
     }
@@ -202,9 +281,8 @@ public class MainWindow extends JFrame {
         panel.setBorder(new EmptyBorder(20, 20, 20, 20));
 
         // File List Panel (for drag & drop)
-        imageConversionListModel = new DefaultListModel<>();
-        imageConversionList = new JList<>(imageConversionListModel);
-        imageConversionList.setCellRenderer(new FileListCellRenderer());
+        imageConversionListModel = new FileQueueModel();
+        imageConversionList = createQueueList(imageConversionListModel);
         JScrollPane fileListScroll = new JScrollPane(imageConversionList);
         fileListScroll.setBorder(BorderFactory.createTitledBorder("Files to Convert (Drag & Drop here)"));
         panel.add(fileListScroll, BorderLayout.CENTER);
@@ -218,14 +296,17 @@ public class MainWindow extends JFrame {
         // Add/Remove Buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton addFilesBtn = new JButton("Add Files...");
-        addFilesBtn.addActionListener(e -> addFiles(imageConversionListModel, "image"));
+        addFilesBtn.addActionListener(e -> addFiles(imageConversionListModel, MediaFiles.IMAGE));
         JButton addDirBtn = new JButton("Add Folder...");
-        addDirBtn.addActionListener(e -> addDirectory(imageConversionListModel, "image"));
+        addDirBtn.addActionListener(e -> addDirectory(imageConversionListModel, MediaFiles.IMAGE));
         JButton clearBtn = new JButton("Clear List");
         clearBtn.addActionListener(e -> imageConversionListModel.clear());
         buttonPanel.add(addFilesBtn);
         buttonPanel.add(addDirBtn);
         buttonPanel.add(clearBtn);
+        imageIncrementalCheckbox = new JCheckBox("Skip unchanged files");
+        imageIncrementalCheckbox.setToolTipText("Skip files converted before with the same settings that haven't changed since");
+        buttonPanel.add(imageIncrementalCheckbox);
         gbc.gridx = 0; gbc.gridy = 0; gbc.gridwidth = 3;
         controlPanel.add(buttonPanel, gbc);
 
@@ -258,8 +339,28 @@ public class MainWindow extends JFrame {
         gbc.gridx = 1; gbc.gridwidth = 2;
         controlPanel.add(resizePanel, gbc);
 
-        // Output Directory
         gbc.gridx = 0; gbc.gridy = 3; gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("Resize Filter:"), gbc);
+        resizeFilterBox = new JComboBox<>(ImageResizer.Filter.values());
+        resizeFilterBox.setSelectedItem(ImageResizer.Filter.LANCZOS);
+        gbc.gridx = 1; gbc.gridwidth = 2;
+        controlPanel.add(resizeFilterBox, gbc);
+
+        // Streaming mode for images larger than the heap
+        gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("Tile Budget (MB):"), gbc);
+        tileBudgetSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_TILE_BUDGET_MB, 16, 65536, 16));
+        tileBudgetSpinner.setToolTipText("Memory shared by all workers when huge images are converted in bands");
+        streamingCheckbox = new JCheckBox("Always stream in bands (PNG/TIFF/BMP)");
+        streamingCheckbox.setToolTipText("Images too large for memory are streamed automatically");
+        JPanel streamingPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        streamingPanel.add(tileBudgetSpinner);
+        streamingPanel.add(streamingCheckbox);
+        gbc.gridx = 1; gbc.gridwidth = 2;
+        controlPanel.add(streamingPanel, gbc);
+
+        // Output Directory
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 1;
         controlPanel.add(new JLabel("Output Directory:"), gbc);
 
         outputDirField = new JTextField(25);
@@ -270,6 +371,13 @@ public class MainWindow extends JFrame {
         browseOutputBtn.addActionListener(e -> chooseFile(outputDirField, JFileChooser.DIRECTORIES_ONLY));
         gbc.gridx = 2; gbc.gridwidth = 1;
         controlPanel.add(browseOutputBtn, gbc);
+
+        // Batch progress
+        imageProgressBar = new JProgressBar();
+        imageProgressBar.setStringPainted(true);
+        imageProgressBar.setForeground(new Color(66, 139, 202));
+        gbc.gridx = 0; gbc.gridy = 6; gbc.gridwidth = 3;
+        controlPanel.add(imageProgressBar, gbc);
         
         panel.add(controlPanel, BorderLayout.SOUTH);
 
@@ -281,7 +389,7 @@ public class MainWindow extends JFrame {
         convertBtn.addActionListener(this::convertImages);
         convertPanel.add(convertBtn);
         gbc.gridx = 0;
-        gbc.gridy = 4;
+        gbc.gridy = 7;
         gbc.gridwidth = 3;
         gbc.anchor = GridBagConstraints.CENTER;
         gbc.fill = GridBagConstraints.NONE;
@@ -295,9 +403,8 @@ public class MainWindow extends JFrame {
         panel.setBorder(new EmptyBorder(20, 20, 20, 20));
 
         // File List Panel
-        videoConversionListModel = new DefaultListModel<>();
-        videoConversionList = new JList<>(videoConversionListModel);
-        videoConversionList.setCellRenderer(new FileListCellRenderer());
+        videoConversionListModel = new FileQueueModel();
+        videoConversionList = createQueueList(videoConversionListModel);
         JScrollPane fileListScroll = new JScrollPane(videoConversionList);
         fileListScroll.setBorder(BorderFactory.createTitledBorder("Videos to Convert (Drag & Drop here)"));
         panel.add(fileListScroll, BorderLayout.CENTER);
@@ -311,14 +418,17 @@ public class MainWindow extends JFrame {
         // Add/Remove Buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton addFilesBtn = new JButton("Add Files...");
-        addFilesBtn.addActionListener(e -> addFiles(videoConversionListModel, "video"));
+        addFilesBtn.addActionListener(e -> addFiles(videoConversionListModel, MediaFiles.VIDEO));
         JButton addDirBtn = new JButton("Add Folder...");
-        addDirBtn.addActionListener(e -> addDirectory(videoConversionListModel, "video"));
+        addDirBtn.addActionListener(e -> addDirectory(videoConversionListModel, MediaFiles.VIDEO));
         JButton clearBtn = new JButton("Clear List");
         clearBtn.addActionListener(e -> videoConversionListModel.clear());
         buttonPanel.add(addFilesBtn);
         buttonPanel.add(addDirBtn);
         buttonPanel.add(clearBtn);
+        videoIncrementalCheckbox = new JCheckBox("Skip unchanged files");
+        videoIncrementalCheckbox.setToolTipText("Skip files converted before with the same settings that haven't changed since");
+        buttonPanel.add(videoIncrementalCheckbox);
         gbc.gridx = 0; gbc.gridy = 0; gbc.gridwidth = 3;
         controlPanel.add(buttonPanel, gbc);
 
@@ -326,26 +436,81 @@ public class MainWindow extends JFrame {
         gbc.gridx = 0; gbc.gridy = 1; gbc.gridwidth = 1;
         controlPanel.add(new JLabel("Output Format:"), gbc);
 
-        String[] videoFormats = {"mp4", "mkv", "mov", "avi", "mp3"};
+        String[] videoFormats = {"mp4", "mkv", "mov", "avi", "webm", "mp3"};
         videoFormatBox = new JComboBox<>(videoFormats);
         gbc.gridx = 1; gbc.gridwidth = 2;
         controlPanel.add(videoFormatBox, gbc);
 
-        // Trimming options
+        // Further outputs made from the same decode
         gbc.gridx = 0; gbc.gridy = 2; gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("Also Create:"), gbc);
+        JPanel extraFormatsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        for (String extraFormat : videoFormats) {
+            JCheckBox checkbox = new JCheckBox(extraFormat);
+            checkbox.setToolTipText("Also write " + extraFormat + " in the same ffmpeg run, which reads and decodes each video once");
+            extraVideoFormatCheckboxes.put(extraFormat, checkbox);
+            extraFormatsPanel.add(checkbox);
+            extraFormatsPanel.add(Box.createHorizontalStrut(10));
+        }
+        gbc.gridx = 1; gbc.gridwidth = 2;
+        controlPanel.add(extraFormatsPanel, gbc);
+
+        // Trimming options
+        gbc.gridx = 0; gbc.gridy = 3; gbc.gridwidth = 1;
         controlPanel.add(new JLabel("Trim (Start - End):"), gbc);
         startTimeField = new JTextField("00:00:00");
         endTimeField = new JTextField();
-        JPanel trimPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        trimModeBox = new JComboBox<>(VideoConverter.TrimMode.values());
+        trimModeBox.setSelectedItem(VideoConverter.TrimMode.ACCURATE);
+        trimModeBox.setToolTipText("Fast cuts on keyframes without re-encoding; frame-accurate re-encodes only the clip");
+        JPanel trimPanel = new JPanel(new GridLayout(1, 3, 5, 0));
         trimPanel.add(startTimeField);
         trimPanel.add(endTimeField);
+        trimPanel.add(trimModeBox);
         gbc.gridx = 1; gbc.gridwidth = 2;
         controlPanel.add(trimPanel, gbc);
 
-        // GIF creation
+        // GIF creation and stream copy
         createGifCheckbox = new JCheckBox("Create GIF");
-        gbc.gridx = 1; gbc.gridy = 3; gbc.gridwidth = 2;
-        controlPanel.add(createGifCheckbox, gbc);
+        streamCopyCheckbox = new JCheckBox("Copy streams when possible", true);
+        streamCopyCheckbox.setToolTipText("Remux streams the output format can hold instead of re-encoding them; much faster and lossless");
+        JPanel videoOptionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        videoOptionsPanel.add(createGifCheckbox);
+        videoOptionsPanel.add(Box.createHorizontalStrut(20));
+        videoOptionsPanel.add(streamCopyCheckbox);
+        chunkedEncodingCheckbox = new JCheckBox("Split long videos across cores");
+        chunkedEncodingCheckbox.setToolTipText("Encode chunks of a long video in parallel and join them; use with \"" + FfmpegScheduler.Mode.LATENCY + "\"");
+        videoOptionsPanel.add(Box.createHorizontalStrut(20));
+        videoOptionsPanel.add(chunkedEncodingCheckbox);
+        gbc.gridx = 1; gbc.gridy = 4; gbc.gridwidth = 2;
+        controlPanel.add(videoOptionsPanel, gbc);
+
+        // GIF settings
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("GIF (FPS, Width, Dither):"), gbc);
+        gifFpsSpinner = new JSpinner(new SpinnerNumberModel(GifOptions.DEFAULT_FPS, 1, 50, 1));
+        gifWidthSpinner = new JSpinner(new SpinnerNumberModel(GifOptions.DEFAULT_WIDTH, 0, 4096, 10));
+        gifWidthSpinner.setToolTipText("0 keeps the width of the video");
+        gifDitherBox = new JComboBox<>(GifOptions.Dither.values());
+        JPanel gifPanel = new JPanel(new GridLayout(1, 3, 5, 0));
+        gifPanel.add(gifFpsSpinner);
+        gifPanel.add(gifWidthSpinner);
+        gifPanel.add(gifDitherBox);
+        gbc.gridx = 1; gbc.gridwidth = 2;
+        controlPanel.add(gifPanel, gbc);
+
+        // Parallel scheduling
+        gbc.gridx = 0; gbc.gridy = 6; gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("Parallel Mode:"), gbc);
+        videoScheduleModeBox = new JComboBox<>(FfmpegScheduler.Mode.values());
+        videoScheduleModeBox.setToolTipText("Run many files at once, or fewer files with more threads each");
+        gbc.gridx = 1; gbc.gridwidth = 2;
+        controlPanel.add(videoScheduleModeBox, gbc);
+
+        // Batch progress
+        videoProgressBar = createFfmpegProgressBar();
+        gbc.gridx = 0; gbc.gridy = 7; gbc.gridwidth = 3;
+        controlPanel.add(videoProgressBar, gbc);
         
         panel.add(controlPanel, BorderLayout.SOUTH);
 
@@ -357,7 +522,7 @@ public class MainWindow extends JFrame {
         convertBtn.addActionListener(this::convertVideos);
         convertPanel.add(convertBtn);
         gbc.gridx = 0;
-        gbc.gridy = 4;
+        gbc.gridy = 8;
         gbc.gridwidth = 3;
         gbc.anchor = GridBagConstraints.CENTER;
         gbc.fill = GridBagConstraints.NONE;
@@ -371,9 +536,8 @@ public class MainWindow extends JFrame {
         panel.setBorder(new EmptyBorder(20, 20, 20, 20));
 
         // File List Panel
-        audioConversionListModel = new DefaultListModel<>();
-        audioConversionList = new JList<>(audioConversionListModel);
-        audioConversionList.setCellRenderer(new FileListCellRenderer());
+        audioConversionListModel = new FileQueueModel();
+        audioConversionList = createQueueList(audioConversionListModel);
         JScrollPane fileListScroll = new JScrollPane(audioConversionList);
         fileListScroll.setBorder(BorderFactory.createTitledBorder("Audio to Convert (Drag & Drop here)"));
         panel.add(fileListScroll, BorderLayout.CENTER);
@@ -387,14 +551,17 @@ public class MainWindow extends JFrame {
         // Add/Remove Buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton addFilesBtn = new JButton("Add Files...");
-        addFilesBtn.addActionListener(e -> addFiles(audioConversionListModel, "audio"));
+        addFilesBtn.addActionListener(e -> addFiles(audioConversionListModel, MediaFiles.AUDIO));
         JButton addDirBtn = new JButton("Add Folder...");
-        addDirBtn.addActionListener(e -> addDirectory(audioConversionListModel, "audio"));
+        addDirBtn.addActionListener(e -> addDirectory(audioConversionListModel, MediaFiles.AUDIO));
         JButton clearBtn = new JButton("Clear List");
         clearBtn.addActionListener(e -> audioConversionListModel.clear());
         buttonPanel.add(addFilesBtn);
         buttonPanel.add(addDirBtn);
         buttonPanel.add(clearBtn);
+        audioIncrementalCheckbox = new JCheckBox("Skip unchanged files");
+        audioIncrementalCheckbox.setToolTipText("Skip files converted before with the same settings that haven't changed since");
+        buttonPanel.add(audioIncrementalCheckbox);
         gbc.gridx = 0; gbc.gridy = 0; gbc.gridwidth = 2;
         controlPanel.add(buttonPanel, gbc);
 
@@ -402,10 +569,37 @@ public class MainWindow extends JFrame {
         gbc.gridx = 0; gbc.gridy = 1; gbc.gridwidth = 1;
         controlPanel.add(new JLabel("Output Format:"), gbc);
 
-        String[] audioFormats = {"mp3", "wav", "aac", "flac"};
+        String[] audioFormats = {"mp3", "wav", "aac", "flac", "aiff", "au"};
         audioFormatBox = new JComboBox<>(audioFormats);
         gbc.gridx = 1;
         controlPanel.add(audioFormatBox, gbc);
+
+        // Sample format; "Original" keeps the input's
+        gbc.gridx = 0; gbc.gridy = 2;
+        controlPanel.add(new JLabel("Rate, Channels, Bits:"), gbc);
+        audioSampleRateBox = new JComboBox<>(new String[]{"Original", "8000", "16000", "22050", "44100", "48000", "96000"});
+        audioChannelsBox = new JComboBox<>(new String[]{"Original", "1", "2"});
+        audioBitDepthBox = new JComboBox<>(new String[]{"Original", "8", "16", "24", "32"});
+        audioBitDepthBox.setToolTipText("Applies to WAV, AIFF and AU; these are converted without ffmpeg when the input is too");
+        JPanel sampleFormatPanel = new JPanel(new GridLayout(1, 3, 5, 0));
+        sampleFormatPanel.add(audioSampleRateBox);
+        sampleFormatPanel.add(audioChannelsBox);
+        sampleFormatPanel.add(audioBitDepthBox);
+        gbc.gridx = 1;
+        controlPanel.add(sampleFormatPanel, gbc);
+
+        // Parallel scheduling
+        gbc.gridx = 0; gbc.gridy = 3;
+        controlPanel.add(new JLabel("Parallel Mode:"), gbc);
+        audioScheduleModeBox = new JComboBox<>(FfmpegScheduler.Mode.values());
+        audioScheduleModeBox.setToolTipText("Run many files at once, or fewer files with more threads each");
+        gbc.gridx = 1;
+        controlPanel.add(audioScheduleModeBox, gbc);
+
+        // Batch progress
+        audioProgressBar = createFfmpegProgressBar();
+        gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 2;
+        controlPanel.add(audioProgressBar, gbc);
         
         panel.add(controlPanel, BorderLayout.SOUTH);
 
@@ -417,7 +611,7 @@ public class MainWindow extends JFrame {
         convertBtn.addActionListener(this::convertAudio);
         convertPanel.add(convertBtn);
         gbc.gridx = 0;
-        gbc.gridy = 3;
+        gbc.gridy = 5;
         gbc.gridwidth = 3;
         gbc.anchor = GridBagConstraints.CENTER;
         gbc.fill = GridBagConstraints.NONE;
@@ -435,11 +629,12 @@ public class MainWindow extends JFrame {
 
         // URL input
         gbc.gridx = 0; gbc.gridy = 0;
-        panel.add(new JLabel("Video URL:"), gbc);
+        panel.add(new JLabel("Video URLs:"), gbc);
 
-        urlField = new JTextField(35);
+        urlArea = new JTextArea(4, 35);
+        urlArea.setToolTipText("One URL per line; playlists and channels are downloaded video by video");
         gbc.gridx = 1; gbc.gridy = 0; gbc.weightx = 1.0;
-        panel.add(urlField, gbc);
+        panel.add(new JScrollPane(urlArea), gbc);
 
         // Quality selection
         gbc.gridx = 0; gbc.gridy = 1;
@@ -454,98 +649,159 @@ public class MainWindow extends JFrame {
         audioOnlyCheckbox = new JCheckBox("Download audio only (MP3)");
         gbc.gridx = 1; gbc.gridy = 2;
         panel.add(audioOnlyCheckbox, gbc);
-        
+
+        // Parallel downloads
+        gbc.gridx = 0; gbc.gridy = 3;
+        panel.add(new JLabel("At Once (Total, Per Site, Fragments):"), gbc);
+        parallelDownloadsSpinner = new JSpinner(new SpinnerNumberModel(DownloadQueue.DEFAULT_MAX_CONCURRENT, 1, 32, 1));
+        perSiteDownloadsSpinner = new JSpinner(new SpinnerNumberModel(DownloadQueue.DEFAULT_PER_HOST_LIMIT, 1, 32, 1));
+        perSiteDownloadsSpinner.setToolTipText("Downloads from the same site at once; sites throttle or block more");
+        fragmentsSpinner = new JSpinner(new SpinnerNumberModel(4, 1, 16, 1));
+        fragmentsSpinner.setToolTipText("Fragments of a streamed video fetched at once");
+        JPanel parallelPanel = new JPanel(new GridLayout(1, 3, 5, 0));
+        parallelPanel.add(parallelDownloadsSpinner);
+        parallelPanel.add(perSiteDownloadsSpinner);
+        parallelPanel.add(fragmentsSpinner);
+        gbc.gridx = 1;
+        panel.add(parallelPanel, gbc);
+
+        // Conversion of each file as soon as it is downloaded
+        gbc.gridx = 0; gbc.gridy = 4;
+        panel.add(new JLabel("Convert To (Format, At Once):"), gbc);
+        String[] convertFormats = new String[DownloadConversion.FORMATS.length + 1];
+        convertFormats[0] = "Don't convert";
+        System.arraycopy(DownloadConversion.FORMATS, 0, convertFormats, 1, DownloadConversion.FORMATS.length);
+        downloadConvertBox = new JComboBox<>(convertFormats);
+        downloadConvertBox.setToolTipText("Converts each video while the next ones download; the download is kept");
+        downloadConvertJobsSpinner = new JSpinner(new SpinnerNumberModel(DownloadConversion.DEFAULT_CONCURRENCY, 1, 16, 1));
+        downloadConvertJobsSpinner.setToolTipText("Conversions at once, independent of the downloads");
+        JPanel convertPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        convertPanel.add(downloadConvertBox);
+        convertPanel.add(downloadConvertJobsSpinner);
+        gbc.gridx = 1;
+        panel.add(convertPanel, gbc);
+
         // Progress Bar
         downloadProgressBar = new JProgressBar();
         downloadProgressBar.setStringPainted(true);
         downloadProgressBar.setForeground(new Color(66, 139, 202)); // A nice blue color
-        gbc.gridx = 0; gbc.gridy = 3; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
         panel.add(downloadProgressBar, gbc);
 
+        // Progress of each download
+        downloadListModel = new DefaultListModel<>();
+        downloadList = new JList<>(downloadListModel);
+        downloadList.setVisibleRowCount(6);
+        downloadList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        gbc.gridy = 6;
+        panel.add(new JScrollPane(downloadList), gbc);
+
         // Download Button Panel
         JPanel downloadButtonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
-        JButton downloadBtn = new JButton("Download");
-        downloadBtn.setFont(new Font("SansSerif", Font.BOLD, 16));
-        downloadBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        downloadBtn.addActionListener(this::downloadVideo);
-        downloadButtonPanel.add(downloadBtn);
+        downloadButton = new JButton("Download");
+        downloadButton.setFont(new Font("SansSerif", Font.BOLD, 16));
+        downloadButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        downloadButton.addActionListener(this::downloadVideo);
+        downloadButtonPanel.add(downloadButton);
 
-        gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.gridx = 0; gbc.gridy = 7; gbc.gridwidth = 2; gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.insets = new Insets(20, 8, 8, 8);
         panel.add(downloadButtonPanel, gbc);
 
         return panel;
     }
 
-    private void addFiles(DefaultListModel<FileItem> model, String type) {
+    private void addFiles(FileQueueModel model, String type) {
         JFileChooser chooser = new JFileChooser();
         chooser.setMultiSelectionEnabled(true);
         chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
         int result = chooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
+            List<FileItem> items = new ArrayList<>();
             for (File file : chooser.getSelectedFiles()) {
-                FileItem item = new FileItem(file, file.getParentFile());
-                if (!model.contains(item)) {
-                    model.addElement(item);
-                }
+                items.add(new FileItem(file, file.getParentFile()));
+            }
+            int added = model.addAllNew(items);
+            log("Added " + added + " " + type + " file(s)" + ((added < items.size()) ? ", " + (items.size() - added) + " already queued" : "") + ".");
+            if (!type.equals(MediaFiles.IMAGE)) {
+                List<File> files = Arrays.asList(chooser.getSelectedFiles());
+                Thread prefetcher = new Thread(() -> prefetchProbes(files), "probe-prefetch");
+                prefetcher.setDaemon(true);
+                prefetcher.start();
             }
         }
     }
 
-    private void addDirectory(DefaultListModel<FileItem> model, String type) {
+    private void addDirectory(FileQueueModel model, String type) {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         int result = chooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File dir = chooser.getSelectedFile();
-            addFilesInDirectory(dir, dir.getParentFile(), model, type);
-        }
-    }
-
-    private void addFilesInDirectory(File dir, File baseDir, DefaultListModel<FileItem> model, String type) {
-        File[] files = dir.listFiles();
-        if (files != null) {
-            log("Scanning folder: " + dir.getName());
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    addFilesInDirectory(file, baseDir, model, type); // Pass the original baseDir
-                } else {
-                    boolean addFile = false;
-                    switch (type) {
-                        case "image":
-                            addFile = isImageFile(file);
-                            break;
-                        case "video":
-                            addFile = isVideoFile(file);
-                            break;
-                        case "audio":
-                            addFile = isAudioFile(file);
-                            break;
-                    }
-                    if (addFile) {
-                        FileItem item = new FileItem(file, baseDir);
-                        if (!model.contains(item)) {
-                            model.addElement(item);
-                        }
-                    }
-                }
-            }
+            scanInBackground(List.of(chooser.getSelectedFile()), Set.of(type));
         }
     }
 
-    private boolean isImageFile(File file) {
-        String name = file.getName().toLowerCase();
-        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp") || name.endsWith(".gif");
+    /**
+     * Walks the files and folders on a background thread and adds every media file of the given
+     * types to its queue, in batches.
+     */
+    private void scanInBackground(List<File> roots, Set<String> types) {
+        log("Scanning " + roots.size() + " item(s)...");
+        Thread scanner = new Thread(() -> {
+            long started = System.currentTimeMillis();
+            List<File> probeFiles = new ArrayList<>();
+            // Only counted on the EDT, where the batches are added
+            AtomicInteger added = new AtomicInteger();
+            MediaScanner.Result result = new MediaScanner(types, (type, batch) -> {
+                if (!type.equals(MediaFiles.IMAGE)) {
+                    batch.forEach(item -> probeFiles.add(item.file));
+                }
+                SwingUtilities.invokeLater(() -> added.addAndGet(queueFor(type).addAllNew(batch)));
+            }).scan(roots);
+            long elapsed = System.currentTimeMillis() - started;
+            String skipped = (result.skippedDirectories > 0) ? ", skipped " + result.skippedDirectories + " unreadable folder(s)" : "";
+            // Runs after the batches queued above
+            SwingUtilities.invokeLater(() -> log("Added " + added.get() + " of " + result.fileCount + " media file(s) found in " + elapsed + " ms"
+                    + ((added.get() < result.fileCount) ? " (the rest were already queued)" : "") + skipped + "."));
+            prefetchProbes(probeFiles);
+        }, "file-scanner");
+        scanner.setDaemon(true);
+        scanner.start();
     }
-    
-    private boolean isVideoFile(File file) {
-        String name = file.getName().toLowerCase();
-        return name.endsWith(".mp4") || name.endsWith(".mkv") || name.endsWith(".mov") || name.endsWith(".avi") || name.endsWith(".flv") || name.endsWith(".wmv");
+
+    /**
+     * Probes queued videos and audio files that aren't in the probe cache yet, several at a time,
+     * so conversions start with their durations and streams known. Runs on the calling thread.
+     */
+    private void prefetchProbes(List<File> files) {
+        File ffmpegExecutable = FfmpegInstaller.findInstalledFfmpeg();
+        if (files.isEmpty() || ffmpegExecutable == null) {
+            return;
+        }
+        MediaProbeCache cache = MediaProbeCache.shared();
+        long started = System.currentTimeMillis();
+        try {
+            int probed = cache.prefetch(ffmpegExecutable, files, Runtime.getRuntime().availableProcessors());
+            if (probed > 0) {
+                log("Probed " + probed + " new media file(s) in " + (System.currentTimeMillis() - started) + " ms.");
+            }
+            cache.save();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log("Could not save the media probe cache: " + e.getMessage());
+        }
     }
 
-    private boolean isAudioFile(File file) {
-        String name = file.getName().toLowerCase();
-        return name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".aac") || name.endsWith(".flac") || name.endsWith(".ogg");
+    private FileQueueModel queueFor(String type) {
+        switch (type) {
+            case MediaFiles.IMAGE:
+                return imageConversionListModel;
+            case MediaFiles.VIDEO:
+                return videoConversionListModel;
+            default:
+                return audioConversionListModel;
+        }
     }
 
     private void setDefaultOutputDirectory() {
@@ -573,35 +829,10 @@ public class MainWindow extends JFrame {
                 try {
                     @SuppressWarnings("unchecked")
                     List<File> files = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
-                    log("Processing " + files.size() + " dropped items...");
-                    for (File file : files) {
-                        if (file.isDirectory()) {
-                            addFilesInDirectory(file, file.getParentFile(), imageConversionListModel, "image");
-                            addFilesInDirectory(file, file.getParentFile(), videoConversionListModel, "video");
-                            addFilesInDirectory(file, file.getParentFile(), audioConversionListModel, "audio");
-                        } else {
-                            if (isImageFile(file)) {
-                                FileItem item = new FileItem(file, file.getParentFile());
-                                if (!imageConversionListModel.contains(item)) {
-                                    imageConversionListModel.addElement(item);
-                                }
-                            } else if (isVideoFile(file)) {
-                                FileItem item = new FileItem(file, file.getParentFile());
-                                if (!videoConversionListModel.contains(item)) {
-                                    videoConversionListModel.addElement(item);
-                                }
-                            } else if (isAudioFile(file)) {
-                                FileItem item = new FileItem(file, file.getParentFile());
-                                if (!audioConversionListModel.contains(item)) {
-                                    audioConversionListModel.addElement(item);
-                                }
-                            }
-                        }
-                    }
+                    scanInBackground(files, Set.of(MediaFiles.IMAGE, MediaFiles.VIDEO, MediaFiles.AUDIO));
                     return true;
                 } catch (Exception e) {
                     log("Error handling dropped files: " + e.getMessage());
-                    e.printStackTrace();
                 }
                 return false;
             }
@@ -630,6 +861,7 @@ public class MainWindow extends JFrame {
         String format = (String) imageFormatBox.getSelectedItem();
         int resizeWidth = (int) resizeWidthSpinner.getValue();
         int resizeHeight = (int) resizeHeightSpinner.getValue();
+        ImageResizer.Filter resizeFilter = (ImageResizer.Filter) resizeFilterBox.getSelectedItem();
 
         if (imageConversionListModel.isEmpty()) {
             log("Please add images to the list before converting.");
@@ -641,36 +873,87 @@ public class MainWindow extends JFrame {
         }
 
         File outputDir = new File(outputDirPath);
-        List<FileItem> itemsToConvert = new ArrayList<>();
+        List<ImageBatchConverter.Task> tasks = new ArrayList<>();
         for (int i = 0; i < imageConversionListModel.getSize(); i++) {
-            itemsToConvert.add(imageConversionListModel.getElementAt(i));
+            FileItem item = imageConversionListModel.getElementAt(i);
+            tasks.add(new ImageBatchConverter.Task(item.file, item.mirroredOutputDir(outputDir)));
         }
+        boolean incremental = imageIncrementalCheckbox.isSelected();
+        String parameters = ConversionManifest.imageParameters(format, resizeWidth, resizeHeight, resizeFilter);
+        FileQueueModel queue = imageConversionListModel;
+        queue.resetStatuses();
 
+        imageProgressBar.setValue(0);
+        imageProgressBar.setMaximum(tasks.size());
+        imageProgressBar.setString("0/" + tasks.size());
+
+        int workerCount = Runtime.getRuntime().availableProcessors();
         ImageConverter converter = new ImageConverter();
+        converter.setStreamingForced(streamingCheckbox.isSelected());
+        // The budget covers all workers, since each may be streaming a huge image at the same time
+        long tileBudgetBytes = (int) tileBudgetSpinner.getValue() * 1024L * 1024L;
+        converter.setTileBudgetBytes(tileBudgetBytes / Math.min(workerCount, tasks.size()));
+        ImageBatchConverter batchConverter = new ImageBatchConverter(converter, workerCount);
+        log("Converting " + tasks.size() + " images to " + format + " using " + workerCount + " worker threads...");
         new Thread(() -> {
-            int successCount = 0;
-            File lastOutputDir = null;
-            for (FileItem item : itemsToConvert) {
-                try {
-                    Path relativePath = item.baseDir.toPath().relativize(item.file.toPath());
-                    Path parentPath = relativePath.getParent();
-                    File targetDir = (parentPath != null) ? new File(outputDir, parentPath.toString()) : outputDir;
-                    lastOutputDir = targetDir;
-
-                    log("Converting " + item.file.getName() + " to " + format + "...");
-                    converter.convert(item.file, format, targetDir, resizeWidth, resizeHeight);
-                    successCount++;
-                } catch (IOException ex) {
-                    log("Error converting " + item.file.getName() + ": " + ex.getMessage());
-                    ex.printStackTrace();
+            ConversionManifest manifest = incremental ? getConversionManifest() : null;
+            List<ImageBatchConverter.Task> pending = tasks;
+            if (manifest != null) {
+                pending = new ArrayList<>();
+                for (ImageBatchConverter.Task task : tasks) {
+                    if (!isUpToDate(manifest, task.inputFile, List.of(converter.getOutputFile(task.inputFile, format, task.outputDir)), parameters)) {
+                        pending.add(task);
+                    } else {
+                        queue.postStatus(task.inputFile, FileQueueModel.Status.DONE);
+                    }
                 }
+                int pendingCount = pending.size();
+                log("Skipping " + (tasks.size() - pendingCount) + " unchanged images.");
+                SwingUtilities.invokeLater(() -> {
+                    imageProgressBar.setMaximum(Math.max(1, pendingCount));
+                    imageProgressBar.setString("0/" + pendingCount);
+                });
+            }
+            ImageBatchConverter.Result result;
+            try {
+                result = batchConverter.convertAll(pending, format, resizeWidth, resizeHeight, resizeFilter, new ImageBatchConverter.Listener() {
+                    @Override
+                    public void onFileStarted(File inputFile) {
+                        queue.postStatus(inputFile, FileQueueModel.Status.RUNNING);
+                        log("Converting " + inputFile.getName() + " to " + format + "...");
+                    }
+
+                    @Override
+                    public void onFileFinished(File inputFile, File targetDir, Exception error, int completed, int total) {
+                        queue.postStatus(inputFile, (error == null) ? FileQueueModel.Status.DONE : FileQueueModel.Status.FAILED);
+                        if (error != null) {
+                            log("Error converting " + inputFile.getName() + ": " + error.getMessage());
+                        } else if (manifest != null) {
+                            recordConversion(manifest, inputFile, converter.getOutputFile(inputFile, format, targetDir), parameters);
+                        }
+                        SwingUtilities.invokeLater(() -> {
+                            // Workers finish out of order, so never move the bar backwards
+                            if (completed > imageProgressBar.getValue()) {
+                                imageProgressBar.setValue(completed);
+                                imageProgressBar.setString(completed + "/" + total);
+                            }
+                        });
+                    }
+                });
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log("Image conversion interrupted.");
+                return;
+            } finally {
+                saveConversionManifest(manifest);
+                saveProbeCache();
             }
-            final int finalSuccessCount = successCount;
-            final File finalOutputDir = lastOutputDir;
+            final ImageBatchConverter.Result finalResult = result;
+            final int pendingCount = pending.size();
             SwingUtilities.invokeLater(() -> {
-                log("Image conversion finished. " + finalSuccessCount + "/" + itemsToConvert.size() + " files converted successfully.");
-                if (finalSuccessCount > 0 && finalOutputDir != null) {
-                    openOutputDirectory(finalOutputDir);
+                log("Image conversion finished. " + finalResult.successCount + "/" + pendingCount + " files converted successfully.");
+                if (finalResult.successCount > 0 && finalResult.lastOutputDir != null) {
+                    openOutputDirectory(finalResult.lastOutputDir);
                 }
             });
         }).start();
@@ -693,38 +976,43 @@ public class MainWindow extends JFrame {
         }
 
         File outputDir = new File(outputDirPath);
-        List<FileItem> itemsToConvert = new ArrayList<>();
-        for (int i = 0; i < videoConversionListModel.getSize(); i++) {
-            itemsToConvert.add(videoConversionListModel.getElementAt(i));
-        }
-
         VideoConverter converter = new VideoConverter();
-        new Thread(() -> {
-            int successCount = 0;
-            File lastOutputDir = null;
-            for (FileItem item : itemsToConvert) {
-                try {
-                    Path relativePath = item.baseDir.toPath().relativize(item.file.toPath());
-                    Path parentPath = relativePath.getParent();
-                    File targetDir = (parentPath != null) ? new File(outputDir, parentPath.toString()) : outputDir;
-                    lastOutputDir = targetDir;
-
-                    converter.convert(item.file, format, targetDir, startTime, endTime, createGif, this::log);
-                    successCount++;
-                } catch (IOException | InterruptedException ex) {
-                    log("Error converting " + item.file.getName() + ": " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+        converter.setStreamCopyEnabled(streamCopyCheckbox.isSelected());
+        converter.setChunkedEncoding(chunkedEncodingCheckbox.isSelected());
+        GifOptions gifOptions = new GifOptions((int) gifFpsSpinner.getValue(), (int) gifWidthSpinner.getValue(),
+                (GifOptions.Dither) gifDitherBox.getSelectedItem());
+        converter.setGifOptions(gifOptions);
+        VideoConverter.TrimMode trimMode = (VideoConverter.TrimMode) trimModeBox.getSelectedItem();
+        converter.setTrimMode(trimMode);
+        // "Create GIF" makes the main output a GIF; the other checked formats come from the same decode
+        List<String> formats = new ArrayList<>();
+        formats.add(createGif ? VideoConverter.GIF_FORMAT : format);
+        extraVideoFormatCheckboxes.forEach((extraFormat, checkbox) -> {
+            if (checkbox.isSelected() && !formats.contains(extraFormat)) {
+                formats.add(extraFormat);
             }
-            final int finalSuccessCount = successCount;
-            final File finalOutputDir = lastOutputDir;
-            SwingUtilities.invokeLater(() -> {
-                log("Video conversion finished. " + finalSuccessCount + "/" + itemsToConvert.size() + " files converted successfully.");
-                if (finalSuccessCount > 0 && finalOutputDir != null) {
-                    openOutputDirectory(finalOutputDir);
-                }
-            });
-        }).start();
+        });
+
+        List<FfmpegScheduler.Job> jobs = new ArrayList<>();
+        Map<File, List<File>> outputFiles = new HashMap<>();
+        FfmpegBatchProgress progress = new FfmpegBatchProgress(videoConversionListModel.getSize());
+        for (int i = 0; i < videoConversionListModel.getSize(); i++) {
+            FileItem item = videoConversionListModel.getElementAt(i);
+            File targetDir = item.mirroredOutputDir(outputDir);
+            outputFiles.put(item.file, converter.getOutputFiles(item.file, formats, targetDir));
+            jobs.add(new FfmpegScheduler.Job(item.file, targetDir, threads ->
+                    converter.convertToFormats(item.file, formats, targetDir, startTime, endTime, threads, prefixedLog(item.file),
+                            status -> updateFfmpegProgress(videoProgressBar, progress, item.file, status))));
+        }
+        boolean gif = formats.contains(VideoConverter.GIF_FORMAT);
+        String parameters = videoIncrementalCheckbox.isSelected() ? ConversionManifest.videoParameters(String.join(",", formats), startTime, endTime, gif ? gifOptions : null, streamCopyCheckbox.isSelected(), trimMode) : null;
+
+        FfmpegScheduler scheduler = new FfmpegScheduler((FfmpegScheduler.Mode) videoScheduleModeBox.getSelectedItem());
+        // Short videos share ffmpeg processes; a failed batch is converted file by file
+        scheduler.setBatching((batch, threads) -> converter.convertBatch(inputFiles(batch), outputDirs(batch), formats.get(0), startTime, endTime, threads, this::log),
+                job -> converter.isBatchable(job.inputFile, formats), FfmpegScheduler.DEFAULT_MAX_BATCH_SIZE);
+        runFfmpegBatch("Video", scheduler, jobs, outputFiles, parameters, "video " + String.join(",", formats),
+                probe -> converter.costVariant(probe, formats, startTime, endTime), videoConversionListModel, videoProgressBar, progress);
     }
 
     private void convertAudio(ActionEvent e) {
@@ -741,47 +1029,220 @@ public class MainWindow extends JFrame {
         }
 
         File outputDir = new File(outputDirPath);
-        List<FileItem> itemsToConvert = new ArrayList<>();
+        AudioConverter converter = new AudioConverter();
+        AudioOptions audioOptions = new AudioOptions(selectedNumber(audioSampleRateBox), selectedNumber(audioChannelsBox), selectedNumber(audioBitDepthBox));
+        converter.setOptions(audioOptions);
+        List<FfmpegScheduler.Job> jobs = new ArrayList<>();
+        Map<File, List<File>> outputFiles = new HashMap<>();
+        FfmpegBatchProgress progress = new FfmpegBatchProgress(audioConversionListModel.getSize());
         for (int i = 0; i < audioConversionListModel.getSize(); i++) {
-            itemsToConvert.add(audioConversionListModel.getElementAt(i));
+            FileItem item = audioConversionListModel.getElementAt(i);
+            File targetDir = item.mirroredOutputDir(outputDir);
+            outputFiles.put(item.file, List.of(converter.getOutputFile(item.file, format, targetDir)));
+            jobs.add(new FfmpegScheduler.Job(item.file, targetDir, threads ->
+                    converter.convert(item.file, format, targetDir, threads, prefixedLog(item.file),
+                            status -> updateFfmpegProgress(audioProgressBar, progress, item.file, status))));
         }
+        String parameters = audioIncrementalCheckbox.isSelected() ? ConversionManifest.audioParameters(format, audioOptions) : null;
 
-        AudioConverter converter = new AudioConverter();
+        FfmpegScheduler scheduler = new FfmpegScheduler((FfmpegScheduler.Mode) audioScheduleModeBox.getSelectedItem());
+        scheduler.setBatching((batch, threads) -> converter.convertBatch(inputFiles(batch), outputDirs(batch), format, threads, this::log),
+                job -> converter.isBatchable(job.inputFile, format), FfmpegScheduler.DEFAULT_MAX_BATCH_SIZE);
+        runFfmpegBatch("Audio", scheduler, jobs, outputFiles, parameters, "audio " + format, probe -> "", audioConversionListModel, audioProgressBar, progress);
+    }
+
+    private static List<File> inputFiles(List<FfmpegScheduler.Job> jobs) {
+        List<File> files = new ArrayList<>();
+        jobs.forEach(job -> files.add(job.inputFile));
+        return files;
+    }
+
+    private static List<File> outputDirs(List<FfmpegScheduler.Job> jobs) {
+        List<File> dirs = new ArrayList<>();
+        jobs.forEach(job -> dirs.add(job.outputDir));
+        return dirs;
+    }
+
+    // The number chosen in the box, or 0 for "Original"
+    private static int selectedNumber(JComboBox<String> box) {
+        String value = (String) box.getSelectedItem();
+        return "Original".equals(value) ? 0 : Integer.parseInt(value);
+    }
+
+    /**
+     * @param outputFiles The output files of each job, by input file.
+     * @param incrementalParameters The settings recorded in the manifest, or {@code null} to convert every file.
+     * @param costProfile What the jobs produce, for the {@link JobCostModel} to estimate their run times.
+     * @param costVariant How each job differs from a plain re-encode, see {@link JobCostModel#withEstimates(List, String, Function)}.
+     */
+    private void runFfmpegBatch(String kind, FfmpegScheduler scheduler, List<FfmpegScheduler.Job> allJobs, Map<File, List<File>> outputFiles, String incrementalParameters,
+                                String costProfile, Function<MediaProbe, String> costVariant, FileQueueModel queue, JProgressBar progressBar, FfmpegBatchProgress progress) {
+        queue.resetStatuses();
+        progressBar.setValue(0);
+        progressBar.setString("Starting...");
         new Thread(() -> {
-            int successCount = 0;
-            File lastOutputDir = null;
-            for (FileItem item : itemsToConvert) {
-                try {
-                    Path relativePath = item.baseDir.toPath().relativize(item.file.toPath());
-                    Path parentPath = relativePath.getParent();
-                    File targetDir = (parentPath != null) ? new File(outputDir, parentPath.toString()) : outputDir;
-                    lastOutputDir = targetDir;
-
-                    converter.convert(item.file, format, targetDir, this::log);
-                    successCount++;
-                } catch (IOException | InterruptedException ex) {
-                    log("Error converting " + item.file.getName() + ": " + ex.getMessage());
-                    ex.printStackTrace();
+            ConversionManifest manifest = (incrementalParameters != null) ? getConversionManifest() : null;
+            List<FfmpegScheduler.Job> jobs = allJobs;
+            if (manifest != null) {
+                jobs = new ArrayList<>();
+                for (FfmpegScheduler.Job job : allJobs) {
+                    if (!isUpToDate(manifest, job.inputFile, outputFiles.get(job.inputFile), incrementalParameters)) {
+                        jobs.add(job);
+                    } else {
+                        queue.postStatus(job.inputFile, FileQueueModel.Status.DONE);
+                    }
                 }
+                log("Skipping " + (allJobs.size() - jobs.size()) + " unchanged files.");
             }
-            final int finalSuccessCount = successCount;
-            final File finalOutputDir = lastOutputDir;
+            // Durations and frame sizes let the longest files start first and the short ones share processes
+            prefetchProbes(inputFiles(jobs));
+            jobs = JobCostModel.shared().withEstimates(jobs, costProfile, costVariant);
+            progress.reset(jobs.size());
+            showFfmpegProgress(progressBar, progress);
+            int slots = scheduler.slotCount(jobs.size());
+            log(kind + " batch: running " + slots + " ffmpeg process(es) at once with " + scheduler.threadsPerJob(slots) + " thread(s) each.");
+
+            AtomicReference<File> lastOutputDir = new AtomicReference<>();
+            FfmpegScheduler.Result result;
+            try {
+                result = scheduler.runAll(jobs, new FfmpegScheduler.Listener() {
+                    @Override
+                    public void onJobStarted(File inputFile, int threads) {
+                        queue.postStatus(inputFile, FileQueueModel.Status.RUNNING);
+                    }
+
+                    @Override
+                    public void onJobFinished(File inputFile, File targetDir, Exception error, int completed, int total) {
+                        queue.postStatus(inputFile, (error == null) ? FileQueueModel.Status.DONE : FileQueueModel.Status.FAILED);
+                        progress.finished(inputFile);
+                        showFfmpegProgress(progressBar, progress);
+                        if (error != null) {
+                            log("Error converting " + inputFile.getName() + ": " + error.getMessage());
+                        } else {
+                            lastOutputDir.set(targetDir);
+                            if (manifest != null) {
+                                outputFiles.get(inputFile).forEach(outputFile -> recordConversion(manifest, inputFile, outputFile, incrementalParameters));
+                            }
+                        }
+                    }
+                });
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log(kind + " conversion interrupted.");
+                return;
+            } finally {
+                saveConversionManifest(manifest);
+                saveProbeCache();
+                saveCostModel();
+            }
+            final FfmpegScheduler.Result finalResult = result;
+            final int jobCount = jobs.size();
             SwingUtilities.invokeLater(() -> {
-                log("Audio conversion finished. " + finalSuccessCount + "/" + itemsToConvert.size() + " files converted successfully.");
-                if (finalSuccessCount > 0 && finalOutputDir != null) {
-                    openOutputDirectory(finalOutputDir);
+                log(kind + " conversion finished. " + finalResult.successCount + "/" + jobCount + " files converted successfully.");
+                if (finalResult.successCount > 0 && lastOutputDir.get() != null) {
+                    openOutputDirectory(lastOutputDir.get());
                 }
             });
         }).start();
     }
 
+    private JProgressBar createFfmpegProgressBar() {
+        JProgressBar bar = new JProgressBar(0, PROGRESS_BAR_STEPS);
+        bar.setStringPainted(true);
+        bar.setForeground(new Color(66, 139, 202));
+        return bar;
+    }
+
+    private void updateFfmpegProgress(JProgressBar progressBar, FfmpegBatchProgress progress, File inputFile, FfmpegProgress status) {
+        progress.update(inputFile, status);
+        showFfmpegProgress(progressBar, progress);
+    }
+
+    private void showFfmpegProgress(JProgressBar progressBar, FfmpegBatchProgress progress) {
+        // Computed on the calling thread; updates arrive throttled, so posting each one is cheap
+        int value = (int) Math.round(progress.fraction() * PROGRESS_BAR_STEPS);
+        String text = progress.toString();
+        SwingUtilities.invokeLater(() -> {
+            progressBar.setValue(value);
+            progressBar.setString(text);
+        });
+    }
+
+    private synchronized ConversionManifest getConversionManifest() {
+        if (conversionManifest == null) {
+            conversionManifest = ConversionManifest.load(ConversionManifest.defaultFile());
+        }
+        conversionManifest.setContentHashing(contentHashing);
+        return conversionManifest;
+    }
+
+    private boolean isUpToDate(ConversionManifest manifest, File inputFile, List<File> outputFiles, String parameters) {
+        try {
+            for (File outputFile : outputFiles) {
+                if (!manifest.isUpToDate(inputFile, outputFile, parameters)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            // Reconvert when in doubt
+            return false;
+        }
+    }
+
+    private void recordConversion(ConversionManifest manifest, File inputFile, File outputFile, String parameters) {
+        try {
+            manifest.record(inputFile, outputFile, parameters);
+        } catch (IOException e) {
+            log("Could not record " + inputFile.getName() + " in the conversion manifest: " + e.getMessage());
+        }
+    }
+
+    private void saveProbeCache() {
+        try {
+            MediaProbeCache.shared().save();
+        } catch (IOException e) {
+            log("Could not save the media probe cache: " + e.getMessage());
+        }
+    }
+
+    private void saveCostModel() {
+        try {
+            JobCostModel.shared().save();
+        } catch (IOException e) {
+            log("Could not save the job cost model: " + e.getMessage());
+        }
+    }
+
+    private void saveConversionManifest(ConversionManifest manifest) {
+        if (manifest == null) {
+            return;
+        }
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            log("Could not save the conversion manifest: " + e.getMessage());
+        }
+    }
+
+    // Concurrent jobs interleave their output, so tag every line with the file it belongs to
+    private Consumer<String> prefixedLog(File inputFile) {
+        String prefix = "[" + inputFile.getName() + "] ";
+        return line -> log(prefix + line);
+    }
+
     private void downloadVideo(ActionEvent e) {
-        String url = urlField.getText();
+        List<String> urls = new ArrayList<>();
+        for (String url : urlArea.getText().split("\\s+")) {
+            if (!url.isBlank()) {
+                urls.add(url);
+            }
+        }
         String outputDirPath = outputDirField.getText();
         boolean audioOnly = audioOnlyCheckbox.isSelected();
         String quality = (String) qualityBox.getSelectedItem();
 
-        if (url.isEmpty()) {
+        if (urls.isEmpty()) {
             log("Please enter a video URL.");
             return;
         }
@@ -791,20 +1252,150 @@ public class MainWindow extends JFrame {
         }
 
         File outputDir = new File(outputDirPath);
+        DownloadQueue queue = createDownloadQueue();
+        startDownloads(() -> runDownloads(queue, urls, true, outputDir, audioOnly, quality));
+    }
+
+    /**
+     * Offers to resume the downloads that were queued or running when iConv last exited.
+     */
+    private void offerDownloadResume() {
+        Thread loader = new Thread(() -> {
+            List<DownloadJournal.Entry> unfinished = DownloadJournal.shared().unfinished();
+            if (unfinished.isEmpty()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                int answer = JOptionPane.showConfirmDialog(this,
+                        unfinished.size() + " download(s) did not finish last time. Resume them?",
+                        "Resume Downloads", JOptionPane.YES_NO_OPTION);
+                if (answer != JOptionPane.YES_OPTION) {
+                    return;
+                }
+                // One queue run per folder and settings, in the order they were queued
+                Map<String, List<DownloadJournal.Entry>> groups = new LinkedHashMap<>();
+                for (DownloadJournal.Entry entry : unfinished) {
+                    groups.computeIfAbsent(entry.outputDir + "|" + entry.extractAudio + "|" + entry.quality, key -> new ArrayList<>()).add(entry);
+                }
+                DownloadQueue queue = createDownloadQueue();
+                startDownloads(() -> {
+                    for (List<DownloadJournal.Entry> group : groups.values()) {
+                        List<String> urls = new ArrayList<>();
+                        group.forEach(entry -> urls.add(entry.url));
+                        DownloadJournal.Entry first = group.get(0);
+                        runDownloads(queue, urls, false, first.outputDir, first.extractAudio, first.quality);
+                    }
+                });
+            });
+        }, "journal-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private DownloadQueue createDownloadQueue() {
         Downloader downloader = new Downloader();
+        downloader.setConcurrentFragments((int) fragmentsSpinner.getValue());
+        // yt-dlp skips videos downloaded before even under another URL, e.g. from a playlist
+        downloader.setDownloadArchiveDir(DownloadJournal.defaultArchiveDir());
+        DownloadQueue queue = new DownloadQueue(downloader, (int) parallelDownloadsSpinner.getValue(), (int) perSiteDownloadsSpinner.getValue());
+        queue.setJournal(DownloadJournal.shared());
+        if (downloadConvertBox.getSelectedIndex() > 0) {
+            int conversions = (int) downloadConvertJobsSpinner.getValue();
+            queue.setPostProcessor(new DownloadConversion((String) downloadConvertBox.getSelectedItem(), conversions), conversions);
+        }
+        return queue;
+    }
+
+    @FunctionalInterface
+    private interface DownloadRun {
+        void run() throws InterruptedException;
+    }
 
+    private void startDownloads(DownloadRun run) {
+        downloadButton.setEnabled(false);
+        downloadListModel.clear();
         downloadProgressBar.setValue(0);
-        downloadProgressBar.setString("Starting...");
+        downloadProgressBar.setString("Listing playlists...");
 
         new Thread(() -> {
             try {
-                downloader.download(url, outputDir, audioOnly, quality, this::handleDownloadProgress);
-                SwingUtilities.invokeLater(() -> openOutputDirectory(outputDir));
-            } catch (Exception ex) {
-                log("Error during download: " + ex.getMessage());
-                ex.printStackTrace();
+                run.run();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log("Downloads interrupted.");
+            } finally {
+                SwingUtilities.invokeLater(() -> downloadButton.setEnabled(true));
             }
-        }).start();
+        }, "download-queue").start();
+    }
+
+    /**
+     * Downloads the URLs on the calling thread and shows their progress.
+     *
+     * @param expandPlaylists Whether to list playlists first; resumed downloads were listed before.
+     */
+    private void runDownloads(DownloadQueue queue, List<String> urls, boolean expandPlaylists, File outputDir, boolean audioOnly, String quality) throws InterruptedException {
+        List<DownloadQueue.Item> items = expandPlaylists ? queue.expand(urls, outputDir, audioOnly, quality, this::log) : DownloadQueue.items(urls);
+        SwingUtilities.invokeLater(() -> items.forEach(downloadListModel::addElement));
+        log("Downloading " + items.size() + " video(s) into " + outputDir + ".");
+        AtomicLong lastRepaint = new AtomicLong();
+        DownloadQueue.Result result = queue.runAll(items, outputDir, audioOnly, quality,
+                item -> (items.size() > 1) ? line -> log("[" + item.url + "] " + line) : this::log,
+                new DownloadQueue.Listener() {
+            @Override
+            public void onItemStarted(DownloadQueue.Item item) {
+                showDownloadProgress(items);
+            }
+
+            @Override
+            public void onItemConverting(DownloadQueue.Item item) {
+                showDownloadProgress(items);
+            }
+
+            @Override
+            public void onItemProgress(DownloadQueue.Item item, DownloadProgress progress) {
+                // yt-dlp reports several times a second per download; repaint a few times a second overall
+                long now = System.currentTimeMillis();
+                long last = lastRepaint.get();
+                if (now - last >= FfmpegProgressParser.DEFAULT_MIN_INTERVAL_MILLIS && lastRepaint.compareAndSet(last, now)) {
+                    showDownloadProgress(items);
+                }
+            }
+
+            @Override
+            public void onItemFinished(DownloadQueue.Item item, Exception error, int completed, int total) {
+                if (error != null) {
+                    log("Error downloading " + item.url + ": " + error.getMessage());
+                }
+                showDownloadProgress(items);
+            }
+        });
+        long skipped = items.stream().filter(item -> item.getState() == DownloadQueue.State.SKIPPED).count();
+        log("Downloads finished. " + result.successCount + "/" + items.size() + " videos downloaded successfully"
+                + ((skipped > 0) ? ", " + skipped + " of them before." : "."));
+        if (result.successCount > skipped) {
+            SwingUtilities.invokeLater(() -> openOutputDirectory(outputDir));
+        }
+    }
+
+    private void showDownloadProgress(List<DownloadQueue.Item> items) {
+        double fraction = DownloadQueue.fraction(items);
+        long finished = items.stream().filter(item -> item.getState() != DownloadQueue.State.QUEUED && item.getState() != DownloadQueue.State.RUNNING
+                && item.getState() != DownloadQueue.State.CONVERTING).count();
+        double bytesPerSecond = 0;
+        for (DownloadQueue.Item item : items) {
+            DownloadProgress progress = item.getProgress();
+            if (item.getState() == DownloadQueue.State.RUNNING && progress != null && progress.bytesPerSecond > 0) {
+                bytesPerSecond += progress.bytesPerSecond;
+            }
+        }
+        String text = String.format("%d/%d videos, %.1f%%", finished, items.size(), fraction * 100)
+                + ((bytesPerSecond > 0) ? ", " + DownloadProgress.formatBytes((long) bytesPerSecond) + "/s" : "");
+        SwingUtilities.invokeLater(() -> {
+            downloadProgressBar.setValue((int) Math.round(fraction * 100));
+            downloadProgressBar.setString(text);
+            downloadList.repaint();
+        });
     }
 
     private void openOutputDirectory(File directory) {
@@ -821,37 +1412,44 @@ public class MainWindow extends JFrame {
     }
 
     private void log(String message) {
-        SwingUtilities.invokeLater(() -> {
-            logArea.append(message + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
-        });
+        logSink.log(message);
     }
 
-    private void handleDownloadProgress(String message) {
-        Matcher matcher = PROGRESS_PATTERN.matcher(message);
-        if (matcher.find()) {
-            String percentageStr = matcher.group(1);
-            try {
-                double percentage = Double.parseDouble(percentageStr);
-                SwingUtilities.invokeLater(() -> {
-                    downloadProgressBar.setValue((int) percentage);
-                    downloadProgressBar.setString(String.format("%.1f%%", percentage));
-                });
-            } catch (NumberFormatException e) {
-                // Ignore if parsing fails
-            }
-        } else {
-            log(message);
-        }
+    private JList<FileItem> createQueueList(FileQueueModel model) {
+        JList<FileItem> list = new JList<>(model);
+        list.setCellRenderer(new FileListCellRenderer());
+        // A fixed cell size lets the list lay out without asking the model for every row
+        list.setPrototypeCellValue(new FileItem(new File("a-fairly-long-media-file-name.jpeg"), null));
+        return list;
     }
 
     private static class FileListCellRenderer extends DefaultListCellRenderer {
+        private static final Color DONE_COLOR = new Color(92, 184, 92);
+        private static final Color FAILED_COLOR = new Color(217, 83, 79);
+
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
             super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
             if (value instanceof FileItem) {
                 FileItem item = (FileItem) value;
-                setText(item.file.getName());
+                FileQueueModel.Status status = (list.getModel() instanceof FileQueueModel && index >= 0)
+                        ? ((FileQueueModel) list.getModel()).getStatus(index) : FileQueueModel.Status.QUEUED;
+                switch (status) {
+                    case RUNNING:
+                        setText(item.file.getName() + "  (converting...)");
+                        break;
+                    case DONE:
+                        setText(item.file.getName());
+                        if (!isSelected) setForeground(DONE_COLOR);
+                        break;
+                    case FAILED:
+                        setText(item.file.getName() + "  (failed)");
+                        if (!isSelected) setForeground(FAILED_COLOR);
+                        break;
+                    default:
+                        setText(item.file.getName());
+                        break;
+                }
                 setToolTipText(item.file.getAbsolutePath());
             }
             return this;
@@ -0,0 +1,156 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Recognizes media files by extension and expands command-line inputs into files to convert.
+ * Kept free of Swing so the command-line mode can use it without loading the UI.
+ */
+public final class MediaFiles {
+
+    public static final String IMAGE = "image";
+    public static final String VIDEO = "video";
+    public static final String AUDIO = "audio";
+
+    private MediaFiles() {
+    }
+
+    public static boolean isImageFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp") || name.endsWith(".gif");
+    }
+
+    public static boolean isVideoFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".mp4") || name.endsWith(".mkv") || name.endsWith(".mov") || name.endsWith(".avi") || name.endsWith(".flv") || name.endsWith(".wmv")
+                || name.endsWith(".webm");
+    }
+
+    public static boolean isAudioFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".aac") || name.endsWith(".flac") || name.endsWith(".ogg")
+                || name.endsWith(".aiff") || name.endsWith(".aif") || name.endsWith(".au");
+    }
+
+    /**
+     * @return {@link #IMAGE}, {@link #VIDEO} or {@link #AUDIO}, or {@code null} if the file is none of them.
+     */
+    public static String typeOf(File file) {
+        if (isImageFile(file)) {
+            return IMAGE;
+        }
+        if (isVideoFile(file)) {
+            return VIDEO;
+        }
+        if (isAudioFile(file)) {
+            return AUDIO;
+        }
+        return null;
+    }
+
+    /**
+     * @param type One of {@link #IMAGE}, {@link #VIDEO} or {@link #AUDIO}.
+     */
+    public static boolean isMediaFile(File file, String type) {
+        switch (type) {
+            case IMAGE:
+                return isImageFile(file);
+            case VIDEO:
+                return isVideoFile(file);
+            case AUDIO:
+                return isAudioFile(file);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Creates the output directory and its parents unless they exist. Conversions running at once
+     * may create the same directory, which doesn't fail for the one that comes second.
+     */
+    public static void createOutputDir(File outputDir) throws IOException {
+        try {
+            Files.createDirectories(outputDir.toPath());
+        } catch (IOException e) {
+            throw new IOException("Could not create output directory: " + outputDir.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Expands files, directories and glob patterns such as {@code photos/**.jpg} into files to convert.
+     * Directories and globs only yield files of the given type. Directories are searched recursively and
+     * keep their own folder in the output, like folders added in the UI; files matched by a glob keep their
+     * path below the part of the pattern without wildcards. Files named explicitly are taken as they are.
+     * @throws IOException If a directory cannot be read.
+     */
+    public static List<FileItem> expand(List<String> inputs, String type) throws IOException {
+        Set<FileItem> items = new LinkedHashSet<>();
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                expandGlob(input, type, items);
+                continue;
+            }
+            File file = new File(input).getAbsoluteFile();
+            if (file.isDirectory()) {
+                addDirectory(file.toPath(), file.getParentFile(), type, null, items);
+            } else if (file.isFile()) {
+                items.add(new FileItem(file, file.getParentFile()));
+            }
+        }
+        return new ArrayList<>(items);
+    }
+
+    private static boolean isGlob(String input) {
+        return firstWildcard(input) != -1;
+    }
+
+    private static int firstWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void expandGlob(String pattern, String type, Set<FileItem> items) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        // Walk from the deepest directory that has no wildcards in its name
+        int wildcard = firstWildcard(normalized);
+        int slash = normalized.lastIndexOf('/', wildcard);
+        Path root = Paths.get(slash == -1 ? "." : (slash == 0 ? "/" : normalized.substring(0, slash))).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        String relativePattern = normalized.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relativePattern);
+        addDirectory(root, root.toFile(), type, path -> matcher.matches(root.relativize(path)), items);
+    }
+
+    private interface PathFilter {
+        boolean accept(Path path);
+    }
+
+    private static void addDirectory(Path dir, File baseDir, String type, PathFilter filter, Set<FileItem> items) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> isMediaFile(path.toFile(), type) && (filter == null || filter.accept(path)))
+                    .forEach(path -> items.add(new FileItem(path.toFile(), baseDir)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.iconv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The container duration and streams of a media file, as reported by ffprobe.
+ */
+public class MediaProbe {
+
+    public static class Stream {
+        public final int index;
+        // "video", "audio", "subtitle", ...
+        public final String type;
+        public final String codec;
+        // Frame size of video streams, otherwise 0
+        public final int width;
+        public final int height;
+        // Sample rate and channel count of audio streams, otherwise 0
+        public final int sampleRate;
+        public final int channels;
+
+        public Stream(int index, String type, String codec) {
+            this(index, type, codec, 0, 0, 0, 0);
+        }
+
+        public Stream(int index, String type, String codec, int width, int height, int sampleRate, int channels) {
+            this.index = index;
+            this.type = type;
+            this.codec = codec;
+            this.width = width;
+            this.height = height;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+
+        @Override
+        public String toString() {
+            if (width > 0) {
+                return "#" + index + " " + type + "/" + codec + " " + width + "x" + height;
+            }
+            if (sampleRate > 0) {
+                return "#" + index + " " + type + "/" + codec + " " + sampleRate + " Hz " + channels + " ch";
+            }
+            return "#" + index + " " + type + "/" + codec;
+        }
+    }
+
+    // The container duration in seconds, or -1 if unknown
+    public final double durationSeconds;
+    public final List<Stream> streams;
+
+    public MediaProbe(double durationSeconds, List<Stream> streams) {
+        this.durationSeconds = durationSeconds;
+        this.streams = Collections.unmodifiableList(streams);
+    }
+
+    public List<Stream> streamsOfType(String type) {
+        List<Stream> matching = new ArrayList<>();
+        for (Stream stream : streams) {
+            if (stream.type.equals(type)) {
+                matching.add(stream);
+            }
+        }
+        return matching;
+    }
+
+    public boolean hasStreamOfType(String type) {
+        return !streamsOfType(type).isEmpty();
+    }
+
+    /**
+     * Runs the ffprobe next to {@code ffmpegExecutable} on the input. Use {@link MediaProbeCache} to
+     * avoid probing the same file again.
+     * @throws IOException If ffprobe is missing or cannot read the input.
+     */
+    public static MediaProbe probe(File ffmpegExecutable, File inputFile) throws IOException, InterruptedException {
+        List<String> command = List.of(
+                FfmpegInstaller.ffprobeFor(ffmpegExecutable).getAbsolutePath(),
+                "-v", "error",
+                "-show_entries", "stream=index,codec_type,codec_name,width,height,sample_rate,channels:format=duration",
+                "-of", "default",
+                inputFile.getAbsolutePath());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+
+        List<Stream> streams = new ArrayList<>();
+        double duration = -1;
+        StringBuilder unparsed = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            // Output is [STREAM] and [FORMAT] sections of key=value lines
+            int index = -1;
+            String type = null;
+            String codec = null;
+            int width = 0;
+            int height = 0;
+            int sampleRate = 0;
+            int channels = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals("[/STREAM]")) {
+                    if (index >= 0 && type != null) {
+                        streams.add(new Stream(index, type, (codec != null) ? codec : "unknown", width, height, sampleRate, channels));
+                    }
+                    index = -1;
+                    type = null;
+                    codec = null;
+                    width = 0;
+                    height = 0;
+                    sampleRate = 0;
+                    channels = 0;
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                if (eq == -1) {
+                    if (!line.startsWith("[")) {
+                        unparsed.append(line).append('\n');
+                    }
+                    continue;
+                }
+                String key = line.substring(0, eq);
+                String value = line.substring(eq + 1);
+                switch (key) {
+                    case "index":
+                        index = Integer.parseInt(value);
+                        break;
+                    case "codec_type":
+                        type = value;
+                        break;
+                    case "codec_name":
+                        codec = value;
+                        break;
+                    case "width":
+                        width = optionalInt(value);
+                        break;
+                    case "height":
+                        height = optionalInt(value);
+                        break;
+                    case "sample_rate":
+                        sampleRate = optionalInt(value);
+                        break;
+                    case "channels":
+                        channels = optionalInt(value);
+                        break;
+                    case "duration":
+                        duration = TimeCode.parseSeconds(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected ffprobe output for " + inputFile.getName(), e);
+        }
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("ffprobe failed for " + inputFile.getName() + ": " + unparsed.toString().trim());
+        }
+        return new MediaProbe(duration, streams);
+    }
+
+    // Fields that don't apply to a stream are reported as N/A
+    private static int optionalInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
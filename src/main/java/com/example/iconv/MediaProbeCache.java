@@ -0,0 +1,254 @@
+package com.example.iconv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers what ffprobe reported for each file, so a file is only probed once as long as it
+ * doesn't change.
+ * <p>
+ * Results are kept in a least recently used map in memory and written as a gzip-compressed binary
+ * file under {@code ~/.iconv}, so they survive restarts. A result counts as current while the
+ * file's size and modification time match the ones it was probed with.
+ * <p>
+ * All methods are thread-safe. {@link #prefetch} probes many files at once, e.g. right after a
+ * folder has been queued, so the converters find their probes ready.
+ */
+public class MediaProbeCache {
+
+    private static final int MAGIC = 0x49435043; // "ICPC"
+    private static final int VERSION = 1;
+    // Also bounds the file; at a few hundred bytes per entry this stays well below 10 MB
+    private static final int MAX_ENTRIES = 20_000;
+
+    private static MediaProbeCache shared;
+
+    private static class Entry {
+        final long size;
+        final long modified;
+        final MediaProbe probe;
+
+        Entry(long size, long modified, MediaProbe probe) {
+            this.size = size;
+            this.modified = modified;
+            this.probe = probe;
+        }
+    }
+
+    private final File file;
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    // Changes made, and how many of them the file holds; guarded by this
+    private long changeCount;
+    private long savedChangeCount;
+
+    private MediaProbeCache(File file) {
+        this.file = file;
+    }
+
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".iconv"), "probes.bin");
+    }
+
+    /**
+     * @return The cache backed by {@link #defaultFile()}, loaded on first use and shared by all converters.
+     */
+    public static synchronized MediaProbeCache shared() {
+        if (shared == null) {
+            shared = load(defaultFile());
+        }
+        return shared;
+    }
+
+    /**
+     * Loads the cache from {@code file}. A missing or unreadable file gives an empty cache.
+     */
+    public static MediaProbeCache load(File file) {
+        MediaProbeCache cache = new MediaProbeCache(file);
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                double duration = in.readDouble();
+                int streamCount = in.readInt();
+                List<MediaProbe.Stream> streams = new ArrayList<>(streamCount);
+                for (int s = 0; s < streamCount; s++) {
+                    streams.add(new MediaProbe.Stream(in.readInt(), in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                }
+                cache.entries.put(path, new Entry(size, modified, new MediaProbe(duration, streams)));
+            }
+        } catch (EOFException e) {
+            // A truncated file still gives us every complete entry before the cut
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable probe cache " + file + ": " + e.getMessage());
+        }
+        return cache;
+    }
+
+    /**
+     * @return The cached probe of the file if it hasn't changed since, otherwise {@code null}.
+     */
+    public MediaProbe getIfCurrent(File inputFile) {
+        String key = inputFile.getAbsolutePath();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.size == inputFile.length() && entry.modified == inputFile.lastModified()) {
+                return entry.probe;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The cached probe of the file, probing it first if it is new or has changed.
+     * @throws IOException If ffprobe fails; failures are not cached.
+     */
+    public MediaProbe probe(File ffmpegExecutable, File inputFile) throws IOException, InterruptedException {
+        MediaProbe cached = getIfCurrent(inputFile);
+        if (cached != null) {
+            return cached;
+        }
+        // Taken before probing, so a file changed while ffprobe runs is probed again next time
+        long size = inputFile.length();
+        long modified = inputFile.lastModified();
+        MediaProbe probe = MediaProbe.probe(ffmpegExecutable, inputFile);
+        synchronized (this) {
+            entries.put(inputFile.getAbsolutePath(), new Entry(size, modified, probe));
+            changeCount++;
+        }
+        return probe;
+    }
+
+    /**
+     * Probes the files that aren't cached yet on {@code threadCount} threads and waits for them.
+     * Files ffprobe can't read are skipped.
+     * @return The number of files that had to be probed.
+     */
+    public int prefetch(File ffmpegExecutable, List<File> files, int threadCount) throws InterruptedException {
+        List<File> missing = new ArrayList<>();
+        for (File file : files) {
+            if (getIfCurrent(file) == null) {
+                missing.add(file);
+            }
+        }
+        int total = missing.size();
+        if (total == 0) {
+            return 0;
+        }
+
+        AtomicInteger nextIndex = new AtomicInteger();
+        int workerCount = Math.max(1, Math.min(threadCount, total));
+        ExecutorService pool = Executors.newFixedThreadPool(workerCount, workerThreadFactory());
+        try {
+            for (int w = 0; w < workerCount; w++) {
+                pool.execute(() -> {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < total && !Thread.currentThread().isInterrupted()) {
+                        try {
+                            probe(ffmpegExecutable, missing.get(index));
+                        } catch (IOException e) {
+                            // Not media ffprobe understands; the conversion will report it
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            // Stops the workers if we were interrupted while waiting
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    /**
+     * Writes the cache if anything was probed since it was loaded or last saved.
+     * The file is replaced atomically, so a crash never leaves a half-written cache behind.
+     */
+    public void save() throws IOException {
+        List<Map.Entry<String, Entry>> snapshot;
+        long snapshotChangeCount;
+        synchronized (this) {
+            if (changeCount == savedChangeCount) {
+                return;
+            }
+            snapshotChangeCount = changeCount;
+            // Least recently used first, so loading restores the same order
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File temp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp.toPath()))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> e : snapshot) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeDouble(entry.probe.durationSeconds);
+                out.writeInt(entry.probe.streams.size());
+                for (MediaProbe.Stream stream : entry.probe.streams) {
+                    out.writeInt(stream.index);
+                    out.writeUTF(stream.type);
+                    out.writeUTF(stream.codec);
+                    out.writeInt(stream.width);
+                    out.writeInt(stream.height);
+                    out.writeInt(stream.sampleRate);
+                    out.writeInt(stream.channels);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Only now, so a failed write is retried by the next save; probes made meanwhile stay unsaved
+        synchronized (this) {
+            savedChangeCount = Math.max(savedChangeCount, snapshotChangeCount);
+        }
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "probe-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
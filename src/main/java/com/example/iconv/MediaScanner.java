@@ -0,0 +1,129 @@
+package com.example.iconv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Walks dropped or chosen files and folders once, sorting every media file into its type's queue.
+ * <p>
+ * Files are handed to the {@link Sink} in batches, every {@value #BATCH_SIZE} files or
+ * {@value #BATCH_INTERVAL_MILLIS} ms, whichever comes first, so the UI can show a huge tree filling in
+ * without one update per file. Symbolic links are followed; link cycles and unreadable folders are skipped.
+ */
+public class MediaScanner {
+
+    private static final int BATCH_SIZE = 4096;
+    private static final long BATCH_INTERVAL_MILLIS = 100;
+
+    public interface Sink {
+        /**
+         * Receives the next files of one type, on the scanning thread.
+         */
+        void accept(String type, List<FileItem> batch);
+    }
+
+    public static class Result {
+        public final int fileCount;
+        public final int skippedDirectories;
+
+        Result(int fileCount, int skippedDirectories) {
+            this.fileCount = fileCount;
+            this.skippedDirectories = skippedDirectories;
+        }
+    }
+
+    private final Set<String> types;
+    private final Sink sink;
+    private final Map<String, List<FileItem>> pending = new HashMap<>();
+    private int pendingCount;
+    private long lastFlush;
+    private int fileCount;
+    private int skippedDirectories;
+
+    /**
+     * @param types The media types to collect, see {@link MediaFiles#IMAGE} etc.
+     */
+    public MediaScanner(Set<String> types, Sink sink) {
+        this.types = types;
+        this.sink = sink;
+    }
+
+    /**
+     * Scans the roots. Folders keep their own name in the output, like files keep their parent folder.
+     */
+    public Result scan(List<File> roots) {
+        lastFlush = System.currentTimeMillis();
+        for (File root : roots) {
+            File baseDir = root.getAbsoluteFile().getParentFile();
+            if (root.isDirectory()) {
+                walk(root.toPath(), baseDir);
+            } else {
+                add(root, baseDir);
+            }
+        }
+        flush();
+        return new Result(fileCount, skippedDirectories);
+    }
+
+    private void walk(Path root, File baseDir) {
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        add(file.toFile(), baseDir);
+                    }
+                    return Thread.currentThread().isInterrupted() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Unreadable folders and link cycles
+                    if (e instanceof FileSystemLoopException || Files.isDirectory(file)) {
+                        skippedDirectories++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // Only thrown for the root itself
+            skippedDirectories++;
+        }
+    }
+
+    private void add(File file, File baseDir) {
+        String type = MediaFiles.typeOf(file);
+        if (type == null || !types.contains(type)) {
+            return;
+        }
+        pending.computeIfAbsent(type, t -> new ArrayList<>()).add(new FileItem(file, baseDir));
+        fileCount++;
+        if (++pendingCount >= BATCH_SIZE || System.currentTimeMillis() - lastFlush >= BATCH_INTERVAL_MILLIS) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        for (Map.Entry<String, List<FileItem>> entry : pending.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                sink.accept(entry.getKey(), entry.getValue());
+                entry.setValue(new ArrayList<>());
+            }
+        }
+        pendingCount = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.iconv;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Converts between uncompressed WAV, AIFF and AU files in-process with {@code javax.sound.sampled},
+ * so batches of short clips don't pay for starting an ffmpeg process per file.
+ * <p>
+ * Handles changing the container, sample rate, channel count and bit depth of integer PCM audio;
+ * samples are streamed through the JDK's converters in fixed-size buffers. Anything else, such as
+ * compressed or floating-point input, is left to ffmpeg.
+ */
+public class PcmAudioConverter {
+
+    private static final Map<String, AudioFileFormat.Type> TYPES = Map.of(
+            "wav", AudioFileFormat.Type.WAVE,
+            "aiff", AudioFileFormat.Type.AIFF,
+            "aif", AudioFileFormat.Type.AIFF,
+            "au", AudioFileFormat.Type.AU);
+
+    private final AudioOptions options;
+
+    public PcmAudioConverter(AudioOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @return Whether output in {@code outputFormat} could be written in-process, if the input allows it.
+     */
+    public static boolean supportsFormat(String outputFormat) {
+        return TYPES.containsKey(outputFormat.toLowerCase());
+    }
+
+    /**
+     * @return Whether the conversion will likely be done in-process, judging by the file names only.
+     */
+    public static boolean isLikelyInProcess(File inputFile, String outputFormat) {
+        String name = inputFile.getName();
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        return supportsFormat(outputFormat) && TYPES.containsKey(extension);
+    }
+
+    /**
+     * Converts {@code inputFile} into {@code outputFile} if both are plain PCM audio this class can handle.
+     *
+     * @return {@code false}, without writing anything, if the conversion needs ffmpeg.
+     * @throws IOException If the conversion was started and failed; the partial output is deleted.
+     */
+    public boolean convert(File inputFile, String outputFormat, File outputFile, Consumer<FfmpegProgress> onStatus) throws IOException {
+        AudioFileFormat.Type type = TYPES.get(outputFormat.toLowerCase());
+        if (type == null) {
+            return false;
+        }
+        AudioInputStream source;
+        try {
+            source = AudioSystem.getAudioInputStream(new BufferedInputStream(Files.newInputStream(inputFile.toPath())));
+        } catch (UnsupportedAudioFileException e) {
+            return false;
+        }
+        try (AudioInputStream in = source) {
+            AudioFormat sourceFormat = in.getFormat();
+            AudioFormat targetFormat = targetFormat(sourceFormat, type);
+            if (targetFormat == null || !AudioSystem.isConversionSupported(targetFormat, sourceFormat)) {
+                return false;
+            }
+            double durationSeconds = (in.getFrameLength() > 0) ? in.getFrameLength() / sourceFormat.getFrameRate() : -1;
+            ProgressStream counted = new ProgressStream(in, sourceFormat.getFrameSize() * sourceFormat.getFrameRate(), durationSeconds, onStatus);
+            AudioInputStream converted = AudioSystem.getAudioInputStream(targetFormat,
+                    new AudioInputStream(counted, sourceFormat, in.getFrameLength()));
+            try {
+                AudioSystem.write(converted, type, outputFile);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(outputFile.toPath());
+                throw (e instanceof IOException) ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+            if (onStatus != null) {
+                onStatus.accept(new FfmpegProgress(durationSeconds, durationSeconds, 0, 0, true));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return The sample format to write, or {@code null} if the input isn't integer PCM.
+     */
+    private AudioFormat targetFormat(AudioFormat source, AudioFileFormat.Type type) {
+        AudioFormat.Encoding encoding = source.getEncoding();
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && !AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) {
+            return null;
+        }
+        float sampleRate = (options.sampleRate > 0) ? options.sampleRate : source.getSampleRate();
+        int channels = (options.channels > 0) ? options.channels : source.getChannels();
+        int bits = (options.bitDepth > 0) ? options.bitDepth : source.getSampleSizeInBits();
+        if (bits % 8 != 0 || bits > 32) {
+            return null;
+        }
+        // WAV stores 8-bit samples unsigned and everything little-endian; AIFF and AU are signed big-endian
+        boolean wave = type == AudioFileFormat.Type.WAVE;
+        AudioFormat.Encoding targetEncoding = (wave && bits == 8) ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+        int frameSize = channels * bits / 8;
+        return new AudioFormat(targetEncoding, sampleRate, bits, channels, frameSize, sampleRate, !wave);
+    }
+
+    // Reports how far into the input the converters have read
+    private static class ProgressStream extends FilterInputStream {
+        private final double bytesPerSecond;
+        private final double durationSeconds;
+        private final Consumer<FfmpegProgress> listener;
+        private final long started = System.nanoTime();
+        private long bytesRead;
+        private long lastReport;
+
+        ProgressStream(InputStream in, double bytesPerSecond, double durationSeconds, Consumer<FfmpegProgress> listener) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+            this.durationSeconds = durationSeconds;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                advance(count);
+            }
+            return count;
+        }
+
+        private void advance(int count) {
+            bytesRead += count;
+            if (listener == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastReport < FfmpegProgressParser.DEFAULT_MIN_INTERVAL_MILLIS) {
+                return;
+            }
+            lastReport = now;
+            double seconds = bytesRead / bytesPerSecond;
+            double elapsed = (System.nanoTime() - started) / 1e9;
+            listener.accept(new FfmpegProgress(seconds, durationSeconds, 0, (elapsed > 0) ? seconds / elapsed : 0, false));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.iconv;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends log lines to a file, rolling it over to {@code name.1}, {@code name.2}, ... once it
+ * exceeds a size limit and keeping a fixed number of old files.
+ */
+public class RotatingLogFile implements AutoCloseable {
+
+    private final File file;
+    private final long maxBytes;
+    private final int backups;
+    private BufferedWriter writer;
+    private long size;
+
+    /**
+     * @param maxBytes The size after which the file is rolled over.
+     * @param backups  The number of rolled-over files to keep.
+     */
+    public RotatingLogFile(File file, long maxBytes, int backups) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.backups = Math.max(0, backups);
+    }
+
+    public static File defaultFile() {
+        return new File(new File(new File(System.getProperty("user.home"), ".iconv"), "logs"), "iconv.log");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized void append(List<String> lines) throws IOException {
+        if (writer == null) {
+            open();
+        }
+        for (String line : lines) {
+            if (size >= maxBytes) {
+                rotate();
+                open();
+            }
+            writer.write(line);
+            writer.newLine();
+            // Close enough for rotation; multi-byte characters only make files slightly larger
+            size += line.length() + 1;
+        }
+        writer.flush();
+    }
+
+    private void open() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = file.length();
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        writer = null;
+        if (backups == 0) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        Files.deleteIfExists(backup(backups).toPath());
+        for (int i = backups - 1; i >= 1; i--) {
+            File older = backup(i);
+            if (older.exists()) {
+                Files.move(older.toPath(), backup(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file.toPath(), backup(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private File backup(int index) {
+        return new File(file.getParentFile(), file.getName() + "." + index);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.iconv;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which streams of an input can be copied into an output container as they are instead of
+ * being re-encoded. Copying is decided per stream type: with an H.264 video and a PCM audio track
+ * going into MP4, the video is copied and only the audio is encoded.
+ */
+public class StreamCopyPlan {
+
+    // Codecs each container can hold without re-encoding, as named by ffprobe
+    private static final Map<String, Set<String>> VIDEO_CODECS = Map.of(
+            "mp4", Set.of("h264", "hevc", "mpeg4", "av1", "vp9"),
+            "mov", Set.of("h264", "hevc", "mpeg4", "prores", "mjpeg"),
+            "mkv", Set.of("h264", "hevc", "mpeg4", "av1", "vp8", "vp9", "mpeg2video", "prores", "theora", "mjpeg"),
+            "avi", Set.of("mpeg4", "h264", "mjpeg", "msmpeg4v3"),
+            "webm", Set.of("vp8", "vp9", "av1"));
+    private static final Map<String, Set<String>> AUDIO_CODECS = Map.of(
+            "mp4", Set.of("aac", "mp3", "ac3", "eac3", "opus", "alac"),
+            "mov", Set.of("aac", "mp3", "ac3", "eac3", "alac", "pcm_s16le", "pcm_s24le"),
+            "mkv", Set.of("aac", "mp3", "ac3", "eac3", "opus", "vorbis", "flac", "alac", "dts", "truehd", "pcm_s16le", "pcm_s24le"),
+            "avi", Set.of("mp3", "ac3", "pcm_s16le"),
+            "webm", Set.of("opus", "vorbis"),
+            "mp3", Set.of("mp3"));
+
+    public final boolean copyVideo;
+    public final boolean copyAudio;
+    // Whether copied HEVC needs the hvc1 tag that Apple players expect
+    private final boolean tagHevc;
+
+    private StreamCopyPlan(boolean copyVideo, boolean copyAudio, boolean tagHevc) {
+        this.copyVideo = copyVideo;
+        this.copyAudio = copyAudio;
+        this.tagHevc = tagHevc;
+    }
+
+    public static StreamCopyPlan transcodeAll() {
+        return new StreamCopyPlan(false, false, false);
+    }
+
+    public static StreamCopyPlan forFormat(MediaProbe probe, String outputFormat) {
+        String format = outputFormat.toLowerCase();
+        Set<String> videoCodecs = VIDEO_CODECS.get(format);
+        Set<String> audioCodecs = AUDIO_CODECS.get(format);
+        List<MediaProbe.Stream> video = probe.streamsOfType("video");
+        List<MediaProbe.Stream> audio = probe.streamsOfType("audio");
+        if (!video.isEmpty() && videoCodecs == null) {
+            // e.g. audio extraction; keep ffmpeg's own handling of the video streams
+            return transcodeAll();
+        }
+        boolean copyVideo = !video.isEmpty() && allIn(video, videoCodecs);
+        boolean copyAudio = !audio.isEmpty() && audioCodecs != null && allIn(audio, audioCodecs);
+        boolean tagHevc = copyVideo && (format.equals("mp4") || format.equals("mov"))
+                && video.stream().anyMatch(stream -> stream.codec.equals("hevc"));
+        return new StreamCopyPlan(copyVideo, copyAudio, tagHevc);
+    }
+
+    /**
+     * @return Whether the container keeps video, as opposed to audio formats like mp3.
+     */
+    public static boolean holdsVideo(String outputFormat) {
+        return VIDEO_CODECS.containsKey(outputFormat.toLowerCase());
+    }
+
+    private static boolean allIn(List<MediaProbe.Stream> streams, Set<String> codecs) {
+        for (MediaProbe.Stream stream : streams) {
+            if (!codecs.contains(stream.codec)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean copiesAnything() {
+        return copyVideo || copyAudio;
+    }
+
+    /**
+     * Adds the codec options for the copied streams; the other streams keep ffmpeg's default encoders.
+     */
+    public void addCodecArguments(List<String> command) {
+        if (copyVideo) {
+            command.add("-c:v");
+            command.add("copy");
+            if (tagHevc) {
+                command.add("-tag:v");
+                command.add("hvc1");
+            }
+        }
+        if (copyAudio) {
+            command.add("-c:a");
+            command.add("copy");
+        }
+    }
+
+    public String describe() {
+        if (copyVideo && copyAudio) {
+            return "stream copy of all streams";
+        }
+        if (copyVideo) {
+            return "video copied, audio re-encoded";
+        }
+        if (copyAudio) {
+            return "audio copied, video re-encoded";
+        }
+        return "full transcode";
+    }
+}
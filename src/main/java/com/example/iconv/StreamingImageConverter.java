@@ -0,0 +1,361 @@
+package com.example.iconv;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Converts images that are too large to decode in one piece.
+ * <p>
+ * The output is presented to the {@link ImageWriter} as a lazily computed {@link RenderedImage}.
+ * The writer pulls it a few rows at a time, and each request is served from a band of output rows
+ * that is decoded with {@link ImageReadParam#setSourceRegion}, resized and alpha-flattened on its own.
+ * Only one band is held at a time, and its height is chosen so that the band fits in the tile budget.
+ * <p>
+ * Only writers that pull their input row by row can be used, which rules out JPEG and GIF.
+ * Random-access inputs such as striped or tiled TIFF decode just the rows each band needs.
+ * Sequential formats like PNG must be re-read from the start for every band, which trades time for memory.
+ */
+public class StreamingImageConverter {
+
+    // Writers known to request their input in small row ranges rather than all at once
+    static final Set<String> STREAMABLE_FORMATS = new HashSet<>(Arrays.asList("png", "tif", "tiff", "bmp"));
+
+    private final long tileBudgetBytes;
+    private final boolean parallel;
+
+    public StreamingImageConverter(long tileBudgetBytes) {
+        this(tileBudgetBytes, true);
+    }
+
+    /**
+     * @param parallel Whether each band may be resized on the common pool, see {@link ImageConversionSession#resizesInParallel()}.
+     */
+    public StreamingImageConverter(long tileBudgetBytes, boolean parallel) {
+        this.tileBudgetBytes = Math.max(1, tileBudgetBytes);
+        this.parallel = parallel;
+    }
+
+    public static boolean supportsFormat(String outputFormat) {
+        return STREAMABLE_FORMATS.contains(outputFormat.toLowerCase());
+    }
+
+    /**
+     * @param reader      A reader whose input is already set to a seekable stream.
+     * @param flattenAlpha Whether transparent pixels should be composited onto white.
+     */
+    public void convert(ImageReader reader, String outputFormat, File outputFile, int resizeWidth, int resizeHeight, ImageResizer.Filter filter, boolean flattenAlpha) throws IOException {
+        if (!supportsFormat(outputFormat)) {
+            throw new IOException("Streaming conversion supports PNG, TIFF and BMP output, not '" + outputFormat + "'.");
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(outputFormat);
+        if (!writers.hasNext()) {
+            throw new IOException("Could not write image in format '" + outputFormat + "'. Please ensure the format is supported.");
+        }
+
+        BandedImage image = new BandedImage(reader, resizeWidth, resizeHeight, filter, flattenAlpha);
+        ImageWriter writer = writers.next();
+        // The output stream writes in place, so remove any previous, possibly longer, file first
+        Files.deleteIfExists(outputFile.toPath());
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(outputFile)) {
+            if (output == null) {
+                throw new IOException("Could not open output file: " + outputFile.getAbsolutePath());
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writer.getDefaultWriteParam());
+        } catch (UncheckedIOException e) {
+            // Decoding failures inside getData() have to travel through the writer unchecked
+            Files.deleteIfExists(outputFile.toPath());
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            // The bands written before the failure don't make a usable image
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * The converted output, computed one band of rows at a time as the writer asks for it.
+     */
+    private class BandedImage implements RenderedImage {
+        private final ImageReader reader;
+        private final boolean alpha;
+        private final boolean flattenAlpha;
+        private final int subsampling;
+        private final int srcWidth;
+        private final int srcHeight;
+        private final int width;
+        private final int height;
+        private final ImageResizer.Coefficients horizontal;
+        private final ImageResizer.Coefficients vertical;
+        private final int bandRows;
+        private final BufferedImage prototype;
+
+        private BufferedImage band;
+        private int bandStart;
+
+        BandedImage(ImageReader reader, int resizeWidth, int resizeHeight, ImageResizer.Filter filter, boolean flattenAlpha) throws IOException {
+            this.reader = reader;
+            int fullWidth = reader.getWidth(0);
+            int fullHeight = reader.getHeight(0);
+            boolean resize = resizeWidth > 0 && resizeHeight > 0;
+            this.width = resize ? resizeWidth : fullWidth;
+            this.height = resize ? resizeHeight : fullHeight;
+
+            // Skip source rows and columns while decoding, as the in-memory path does
+            this.subsampling = resize ? ImageConverter.subsamplingFactor(fullWidth, fullHeight, resizeWidth, resizeHeight) : 1;
+            this.srcWidth = (fullWidth + subsampling - 1) / subsampling;
+            this.srcHeight = (fullHeight + subsampling - 1) / subsampling;
+
+            ColorModel sourceModel = reader.getRawImageType(0) != null ? reader.getRawImageType(0).getColorModel() : null;
+            boolean sourceAlpha = sourceModel == null || sourceModel.hasAlpha();
+            this.alpha = sourceAlpha && !flattenAlpha;
+            this.flattenAlpha = sourceAlpha && flattenAlpha;
+
+            boolean scaled = srcWidth != width || srcHeight != height;
+            this.horizontal = scaled ? ImageResizer.Coefficients.compute(filter, srcWidth, width) : null;
+            this.vertical = scaled ? ImageResizer.Coefficients.compute(filter, srcHeight, height) : null;
+            this.bandRows = bandRowsForBudget(scaled);
+            this.prototype = new BufferedImage(1, 1, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        }
+
+        /**
+         * Picks the number of output rows per band so that the decoded source rows, their packed copy,
+         * the horizontally filtered rows and the output band together stay within the budget.
+         */
+        private int bandRowsForBudget(boolean scaled) {
+            // Decoded band (up to 4 bytes per pixel), packed copy and intermediate rows
+            long bytesPerSourceRow = (long) srcWidth * 8 + (scaled ? (long) width * 4 : 0);
+            long bytesPerOutputRow = (long) width * 4;
+            double sourceRowsPerOutputRow = (double) srcHeight / height;
+            long filterRows = scaled ? vertical.stride : 0;
+            long available = tileBudgetBytes - filterRows * bytesPerSourceRow;
+            long rows = (long) (available / (sourceRowsPerOutputRow * bytesPerSourceRow + bytesPerOutputRow));
+            return (int) Math.max(1, Math.min(rows, height));
+        }
+
+        private void ensureBand(int fromRow, int toRow) {
+            if (band != null && fromRow >= bandStart && toRow <= bandStart + band.getHeight()) {
+                return;
+            }
+            // Writers like BMP walk bottom-up, so extend the band in the direction of travel
+            boolean upwards = (band != null) ? fromRow < bandStart : toRow == height && fromRow > 0;
+            int start = upwards ? Math.max(0, toRow - bandRows) : fromRow;
+            int end = Math.max(toRow, Math.min(height, start + bandRows));
+            try {
+                band = null;
+                band = computeBand(start, end);
+                bandStart = start;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private BufferedImage computeBand(int fromRow, int toRow) throws IOException {
+            int rows = toRow - fromRow;
+            int firstSource = (vertical != null) ? vertical.start[fromRow] : fromRow;
+            int lastSource = (vertical != null) ? vertical.start[toRow - 1] + vertical.count[toRow - 1] : toRow;
+            if (vertical != null) {
+                for (int y = fromRow; y < toRow; y++) {
+                    lastSource = Math.max(lastSource, vertical.start[y] + vertical.count[y]);
+                }
+            }
+            int sourceRows = lastSource - firstSource;
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            int regionY = firstSource * subsampling;
+            int regionHeight = Math.min(sourceRows * subsampling, reader.getHeight(0) - regionY);
+            param.setSourceRegion(new Rectangle(0, regionY, reader.getWidth(0), regionHeight));
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            BufferedImage decoded = reader.read(0, param);
+
+            boolean filterWithAlpha = alpha || flattenAlpha;
+            int[] pixels = ImageResizer.toPackedPixels(decoded, filterWithAlpha);
+            int decodedWidth = decoded.getWidth();
+            decoded = null;
+
+            BufferedImage output = new BufferedImage(width, rows, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            int[] target = ImageResizer.packedData(output);
+            if (horizontal == null) {
+                System.arraycopy(pixels, 0, target, 0, target.length);
+                if (flattenAlpha) {
+                    flattenOntoWhite(target);
+                }
+                return output;
+            }
+
+            if (filterWithAlpha) {
+                ImageResizer.premultiply(pixels, decodedWidth, sourceRows, parallel);
+            }
+            int[] intermediate = new int[width * sourceRows];
+            int[] src = pixels;
+            ImageResizer.forEachBand(parallel, sourceRows, (long) decodedWidth * sourceRows,
+                    (from, to) -> ImageResizer.horizontalPass(src, decodedWidth, from, to, intermediate, width, horizontal));
+            ImageResizer.forEachBand(parallel, rows, (long) width * rows,
+                    (from, to) -> ImageResizer.verticalPass(intermediate, firstSource, target, fromRow, width, fromRow + from, fromRow + to, vertical));
+            if (flattenAlpha) {
+                // Premultiplied colour plus white for the uncovered part
+                for (int i = 0; i < target.length; i++) {
+                    int p = target[i];
+                    int inverse = 255 - (p >>> 24);
+                    target[i] = 0xFF000000
+                            | Math.min(255, ((p >> 16) & 0xFF) + inverse) << 16
+                            | Math.min(255, ((p >> 8) & 0xFF) + inverse) << 8
+                            | Math.min(255, (p & 0xFF) + inverse);
+                }
+            } else if (alpha) {
+                ImageResizer.unpremultiply(target);
+            }
+            return output;
+        }
+
+        private void flattenOntoWhite(int[] pixels) {
+            for (int i = 0; i < pixels.length; i++) {
+                int p = pixels[i];
+                int a = p >>> 24;
+                int inverse = 255 - a;
+                pixels[i] = 0xFF000000
+                        | (((p >> 16) & 0xFF) * a + 255 * inverse) / 255 << 16
+                        | (((p >> 8) & 0xFF) * a + 255 * inverse) / 255 << 8
+                        | ((p & 0xFF) * a + 255 * inverse) / 255;
+            }
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            Rectangle bounds = rect.intersection(new Rectangle(0, 0, width, height));
+            ensureBand(bounds.y, bounds.y + bounds.height);
+            return band.getRaster().createChild(bounds.x, bounds.y - bandStart, bounds.width, bounds.height, bounds.x, bounds.y, null);
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            return getData(new Rectangle(0, tileY * bandRows, width, Math.min(bandRows, height - tileY * bandRows)));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            Rectangle rect = (raster != null) ? raster.getBounds() : new Rectangle(0, 0, width, height);
+            WritableRaster target = (raster != null) ? raster : prototype.getRaster().createCompatibleWritableRaster(width, height);
+            for (int y = rect.y; y < rect.y + rect.height; y += bandRows) {
+                Raster rows = getData(new Rectangle(rect.x, y, rect.width, Math.min(bandRows, rect.y + rect.height - y)));
+                target.setRect(rows);
+            }
+            return target;
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return prototype.getColorModel();
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return prototype.getSampleModel().createCompatibleSampleModel(width, bandRows);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return (height + bandRows - 1) / bandRows;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return bandRows;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
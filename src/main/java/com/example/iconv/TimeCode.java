@@ -0,0 +1,51 @@
+package com.example.iconv;
+
+/**
+ * Parses and formats the time values ffmpeg uses, such as {@code 01:02:03.5}, {@code 2:30} or {@code 45.2}.
+ */
+public final class TimeCode {
+
+    private TimeCode() {
+    }
+
+    /**
+     * @return The time in seconds, or -1 if {@code value} is empty or not a time (e.g. ffmpeg's {@code N/A}).
+     */
+    public static double parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return -1;
+        }
+        double seconds = 0;
+        int start = 0;
+        try {
+            // Each colon-separated field is worth 60 of the next one
+            int colon;
+            while ((colon = trimmed.indexOf(':', start)) != -1) {
+                seconds = (seconds + Integer.parseInt(trimmed.substring(start, colon))) * 60;
+                start = colon + 1;
+            }
+            double last = Double.parseDouble(trimmed.substring(start));
+            return (last < 0) ? -1 : seconds + last;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Formats a duration as {@code M:SS}, or {@code H:MM:SS} from one hour on.
+     */
+    public static String format(double seconds) {
+        long total = Math.max(0, Math.round(seconds));
+        long hours = total / 3600;
+        long minutes = (total / 60) % 60;
+        long secs = total % 60;
+        if (hours > 0) {
+            return String.format("%d:%02d:%02d", hours, minutes, secs);
+        }
+        return String.format("%d:%02d", minutes, secs);
+    }
+}
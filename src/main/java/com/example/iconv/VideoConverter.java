@@ -1,75 +1,592 @@
 package com.example.iconv;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.function.Consumer;
 
 public class VideoConverter {
 
+    /**
+     * How a clip with a start or end time is cut. Both seek on the input, so ffmpeg jumps straight to
+     * the keyframe before the start instead of decoding everything in front of it.
+     */
+    public enum TrimMode {
+        // Copies streams from the keyframe before the start; the clip may begin slightly early
+        FAST("Fast (keyframes)"),
+        // Decodes only from that keyframe up to the exact start and re-encodes the clip
+        ACCURATE("Frame-accurate");
+
+        private final String label;
+
+        TrimMode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // The format name that selects a GIF in convertToFormats
+    public static final String GIF_FORMAT = "gif";
+
+    private boolean streamCopyEnabled = true;
+    private TrimMode trimMode = TrimMode.ACCURATE;
+    private boolean chunkedEncoding;
+    private GifOptions gifOptions = GifOptions.defaults();
+    // Created on the first GIF unless set, so converters that never make GIFs don't touch ~/.iconv
+    private GifPaletteCache paletteCache;
+    private boolean paletteCacheSet;
+
+    /**
+     * Whether streams the output container can hold as they are may be copied instead of re-encoded.
+     * Copying is much faster and lossless, but keeps the original codecs and bitrate.
+     */
+    public void setStreamCopyEnabled(boolean streamCopyEnabled) {
+        this.streamCopyEnabled = streamCopyEnabled;
+    }
+
+    /**
+     * Whether long videos whose video has to be re-encoded are split into chunks that are encoded by
+     * several ffmpeg processes at once. Only pays off when {@code convert} is given enough threads,
+     * e.g. a single file in latency mode; GIFs and clips are always encoded in one process.
+     */
+    public void setChunkedEncoding(boolean chunkedEncoding) {
+        this.chunkedEncoding = chunkedEncoding;
+    }
+
+    public void setGifOptions(GifOptions gifOptions) {
+        this.gifOptions = gifOptions;
+    }
+
+    /**
+     * Sets where generated GIF palettes are cached, or {@code null} to always analyse the source.
+     */
+    public synchronized void setPaletteCache(GifPaletteCache paletteCache) {
+        this.paletteCache = paletteCache;
+        this.paletteCacheSet = true;
+    }
+
+    private synchronized GifPaletteCache paletteCache() {
+        if (!paletteCacheSet) {
+            paletteCache = new GifPaletteCache(GifPaletteCache.defaultDir());
+            paletteCacheSet = true;
+        }
+        return paletteCache;
+    }
+
+    /**
+     * Sets how clips are cut when a start or end time is given. Fast trimming only copies streams
+     * while stream copy is enabled; otherwise both modes re-encode the clip.
+     */
+    public void setTrimMode(TrimMode trimMode) {
+        this.trimMode = trimMode;
+    }
+
     public void convert(File inputFile, String outputFormat, File outputDir, String startTime, String endTime, boolean createGif, Consumer<String> onProgress) throws IOException, InterruptedException {
+        convert(inputFile, outputFormat, outputDir, startTime, endTime, createGif, 0, onProgress);
+    }
+
+    /**
+     * @param threads The number of threads ffmpeg may use, or 0 to let ffmpeg decide.
+     */
+    public void convert(File inputFile, String outputFormat, File outputDir, String startTime, String endTime, boolean createGif, int threads, Consumer<String> onProgress) throws IOException, InterruptedException {
+        convert(inputFile, outputFormat, outputDir, startTime, endTime, createGif, threads, onProgress, null);
+    }
+
+    /**
+     * @param onStatus Receives throttled progress updates with percent and ETA, or {@code null}.
+     *                 Messages go to {@code onProgress}; ffmpeg's own log is only passed on if it fails.
+     */
+    public void convert(File inputFile, String outputFormat, File outputDir, String startTime, String endTime, boolean createGif, int threads, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
         if (!inputFile.exists()) {
             throw new IOException("Input file does not exist: " + inputFile.getAbsolutePath());
         }
-        if (!outputDir.exists()) {
-            if (!outputDir.mkdirs()) {
-                throw new IOException("Could not create output directory: " + outputDir.getAbsolutePath());
+        MediaFiles.createOutputDir(outputDir);
+
+        File ffmpegExecutable = FfmpegInstaller.ensureFfmpegInstalled(onProgress);
+
+        File outputFile = getOutputFile(inputFile, outputFormat, outputDir, createGif);
+        double[] clip = parseClip(startTime, endTime);
+        double clipStart = clip[0];
+        double clipEnd = clip[1];
+        boolean trimming = clipStart > 0 || clipEnd > 0;
+
+        if (createGif) {
+            onProgress.accept("Starting GIF conversion for: " + inputFile.getName() + " (" + gifOptions + ")");
+            try {
+                convertGif(ffmpegExecutable, inputFile, outputFile, clipStart, clipEnd, threads, onProgress, onStatus);
+            } catch (IOException e) {
+                onProgress.accept("Conversion failed: " + e.getMessage());
+                throw e;
             }
+            onProgress.accept("Conversion finished successfully (GIF)!");
+            return;
         }
 
+        // Streams the target container can hold are copied instead of re-encoded; accurate clips
+        // must be re-encoded since a copy can only start on a keyframe
+        StreamCopyPlan plan = StreamCopyPlan.transcodeAll();
+        boolean copyAllowed = streamCopyEnabled && (!trimming || trimMode == TrimMode.FAST);
+        boolean chunkAllowed = chunkedEncoding && !trimming && StreamCopyPlan.holdsVideo(outputFormat);
+        // A cached probe is used for progress even when nothing else needs one
+        MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+        if (probe == null && (copyAllowed || chunkAllowed)) {
+            try {
+                probe = MediaProbeCache.shared().probe(ffmpegExecutable, inputFile);
+            } catch (IOException e) {
+                onProgress.accept("Could not probe " + inputFile.getName() + ", transcoding: " + e.getMessage());
+            }
+        }
+        double inputDuration = (probe != null) ? probe.durationSeconds : -1;
+        if (copyAllowed && probe != null) {
+            plan = StreamCopyPlan.forFormat(probe, outputFormat);
+        }
+
+        if (chunkAllowed && probe != null && !plan.copyVideo) {
+            ChunkedVideoEncoder chunkedEncoder = new ChunkedVideoEncoder(ffmpegExecutable,
+                    (threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+            if (chunkedEncoder.isWorthwhile(probe)) {
+                onProgress.accept("Starting chunked conversion for: " + inputFile.getName() + " (" + plan.describe() + ")");
+                try {
+                    chunkedEncoder.encode(inputFile, probe, outputFile, plan, onProgress, onStatus);
+                    onProgress.accept("Conversion finished successfully (" + plan.describe() + ", chunked)!");
+                    return;
+                } catch (IOException e) {
+                    onProgress.accept("Chunked encoding failed (" + e.getMessage() + "), encoding in one process");
+                    Files.deleteIfExists(outputFile.toPath());
+                }
+            }
+        }
+
+        onProgress.accept("Starting conversion for: " + inputFile.getName() + " (" + plan.describe() + ")");
+        try {
+            if (plan.copiesAnything()) {
+                try {
+                    runFfmpeg(buildCommand(ffmpegExecutable, inputFile, outputFile, clipStart, clipEnd, threads, plan),
+                            inputDuration, clipStart, clipEnd, onProgress, onStatus);
+                } catch (IOException e) {
+                    // e.g. codec parameters the container rejects; a full transcode still works
+                    onProgress.accept("Stream copy failed (" + e.getMessage() + "), falling back to transcoding");
+                    Files.deleteIfExists(outputFile.toPath());
+                    plan = StreamCopyPlan.transcodeAll();
+                    runFfmpeg(buildCommand(ffmpegExecutable, inputFile, outputFile, clipStart, clipEnd, threads, plan),
+                            inputDuration, clipStart, clipEnd, onProgress, onStatus);
+                }
+            } else {
+                runFfmpeg(buildCommand(ffmpegExecutable, inputFile, outputFile, clipStart, clipEnd, threads, plan),
+                        inputDuration, clipStart, clipEnd, onProgress, onStatus);
+            }
+        } catch (IOException e) {
+            onProgress.accept("Conversion failed: " + e.getMessage());
+            throw e;
+        }
+        onProgress.accept("Conversion finished successfully (" + plan.describe() + ")!");
+    }
+
+    /**
+     * Converts one input into several formats with a single ffmpeg process, which reads and decodes
+     * the input once and feeds every output from it. The format {@value #GIF_FORMAT} creates a GIF
+     * with the current {@link GifOptions}; audio formats such as mp3 only get the audio. Streams an
+     * output can hold as they are are copied into it, as in {@link #convert}, and if a copy fails
+     * every output is transcoded instead.
+     * <p>
+     * Since all outputs are fed from the same decoded frames they advance together, so
+     * {@code onStatus} gets the position of the input, which is that of every output.
+     */
+    public void convertToFormats(File inputFile, List<String> formats, File outputDir, String startTime, String endTime, int threads, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        if (formats.size() == 1) {
+            String format = formats.get(0);
+            convert(inputFile, format, outputDir, startTime, endTime, format.equals(GIF_FORMAT), threads, onProgress, onStatus);
+            return;
+        }
+        if (!inputFile.exists()) {
+            throw new IOException("Input file does not exist: " + inputFile.getAbsolutePath());
+        }
+        MediaFiles.createOutputDir(outputDir);
+
         File ffmpegExecutable = FfmpegInstaller.ensureFfmpegInstalled(onProgress);
+        double[] clip = parseClip(startTime, endTime);
+        double clipStart = clip[0];
+        double clipEnd = clip[1];
+        boolean trimming = clipStart > 0 || clipEnd > 0;
 
-        String fileName = inputFile.getName();
-        int dotIndex = fileName.lastIndexOf('.');
-        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
-        File outputFile = new File(outputDir, nameWithoutExtension + "." + (createGif ? "gif" : outputFormat));
+        boolean copyAllowed = streamCopyEnabled && (!trimming || trimMode == TrimMode.FAST);
+        MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+        if (probe == null && copyAllowed) {
+            try {
+                probe = MediaProbeCache.shared().probe(ffmpegExecutable, inputFile);
+            } catch (IOException e) {
+                onProgress.accept("Could not probe " + inputFile.getName() + ", transcoding: " + e.getMessage());
+            }
+        }
+
+        List<File> outputFiles = getOutputFiles(inputFile, formats, outputDir);
+        boolean gif = formats.contains(GIF_FORMAT);
+        File palette = (gif && paletteCache() != null) ? paletteCache().paletteFile(inputFile, clipStart, clipEnd) : null;
+        // Encoders run side by side, so they share the thread budget
+        int threadsPerOutput = (threads > 0) ? Math.max(1, threads / formats.size()) : 0;
+
+        boolean copy = copyAllowed && probe != null;
+        while (true) {
+            boolean paletteCached = palette != null && palette.isFile();
+            List<String> command = new ArrayList<>();
+            command.add(ffmpegExecutable.getAbsolutePath());
+            addClipInput(command, inputFile, clipStart, clipEnd);
+            if (paletteCached) {
+                command.add("-i");
+                command.add(palette.getAbsolutePath());
+            }
+            command.add("-y");
+            File temporaryPalette = gif ? addGifFilter(command, palette, paletteCached) : null;
+
+            boolean copiesAnything = false;
+            List<String> descriptions = new ArrayList<>();
+            for (int i = 0; i < formats.size(); i++) {
+                String format = formats.get(i);
+                if (format.equals(GIF_FORMAT)) {
+                    command.add("-map");
+                    command.add("[gif]");
+                    descriptions.add("gif");
+                } else {
+                    StreamCopyPlan plan = copy ? StreamCopyPlan.forFormat(probe, format) : StreamCopyPlan.transcodeAll();
+                    copiesAnything |= plan.copiesAnything();
+                    // Optional maps, so inputs without audio or video still convert
+                    if (StreamCopyPlan.holdsVideo(format)) {
+                        command.add("-map");
+                        command.add("0:v:0?");
+                    }
+                    command.add("-map");
+                    command.add("0:a:0?");
+                    plan.addCodecArguments(command);
+                    if (clipStart > 0 && plan.copiesAnything()) {
+                        command.add("-avoid_negative_ts");
+                        command.add("make_zero");
+                    }
+                    descriptions.add(format + ": " + plan.describe());
+                }
+                if (threadsPerOutput > 0) {
+                    command.add("-threads");
+                    command.add(String.valueOf(threadsPerOutput));
+                }
+                command.add(outputFiles.get(i).getAbsolutePath());
+            }
+            addPaletteOutput(command, temporaryPalette);
+
+            onProgress.accept("Starting conversion for: " + inputFile.getName() + " into " + formats.size() + " formats (" + String.join(", ", descriptions) + ")");
+            try {
+                runWithPalette(command, (probe != null) ? probe.durationSeconds : -1, clipStart, clipEnd, palette, temporaryPalette, onProgress, onStatus);
+                break;
+            } catch (IOException e) {
+                // Outputs are written side by side, so none of them is complete
+                for (File outputFile : outputFiles) {
+                    Files.deleteIfExists(outputFile.toPath());
+                }
+                if (copiesAnything) {
+                    // e.g. codec parameters one of the containers rejects; a full transcode still works
+                    onProgress.accept("Stream copy failed (" + e.getMessage() + "), falling back to transcoding");
+                    copy = false;
+                    continue;
+                }
+                onProgress.accept("Conversion failed: " + e.getMessage());
+                throw e;
+            }
+        }
+        for (File outputFile : outputFiles) {
+            onProgress.accept("Wrote " + outputFile.getName() + " (" + outputFile.length() / 1024 + " KB)");
+        }
+        onProgress.accept("Conversion finished successfully!");
+    }
+
+    /**
+     * Tells the {@link JobCostModel} how converting a file into {@code formats} differs from a plain
+     * re-encode, since copied streams and clips take a fraction of the time per second of input.
+     *
+     * @param probe The file's probe, or {@code null} if it wasn't probed.
+     * @return {@code "clip"} when trimming, {@code "copy."} and the formats that copy the video,
+     *         or an empty string.
+     */
+    public String costVariant(MediaProbe probe, List<String> formats, String startTime, String endTime) {
+        boolean trimming = TimeCode.parseSeconds(startTime) > 0 || TimeCode.parseSeconds(endTime) > 0;
+        List<String> copied = new ArrayList<>();
+        if (streamCopyEnabled && (!trimming || trimMode == TrimMode.FAST) && probe != null) {
+            for (String format : formats) {
+                if (!format.equals(GIF_FORMAT) && StreamCopyPlan.forFormat(probe, format).copyVideo) {
+                    copied.add(format);
+                }
+            }
+        }
+        String variant = copied.isEmpty() ? "" : "copy." + String.join(",", copied);
+        if (trimming) {
+            variant = variant.isEmpty() ? "clip" : variant + ".clip";
+        }
+        return variant;
+    }
+
+    /**
+     * @return Whether the file is short enough to share an ffmpeg process with others when converted
+     *         into {@code formats}, see {@link #convertBatch}. GIFs and several formats at once are not batched.
+     */
+    public boolean isBatchable(File inputFile, List<String> formats) {
+        if (formats.size() != 1 || formats.contains(GIF_FORMAT)) {
+            return false;
+        }
+        MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+        return probe != null && probe.durationSeconds > 0 && probe.durationSeconds <= FfmpegScheduler.SMALL_JOB_SECONDS;
+    }
+
+    /**
+     * Converts several files into {@code outputFormat} with one ffmpeg process that reads them all and
+     * writes one output per input, with the same clip range and stream copying as {@link #convert}.
+     * If any of them fails, every output of the batch is deleted and the call fails, so the caller
+     * can convert the files one by one instead.
+     *
+     * @param outputDirs The output directory of each input.
+     */
+    public void convertBatch(List<File> inputFiles, List<File> outputDirs, String outputFormat, String startTime, String endTime, int threads, Consumer<String> onProgress) throws IOException, InterruptedException {
+        File ffmpegExecutable = FfmpegInstaller.ensureFfmpegInstalled(onProgress);
+        double[] clip = parseClip(startTime, endTime);
+        double clipStart = clip[0];
+        double clipEnd = clip[1];
+        boolean trimming = clipStart > 0 || clipEnd > 0;
+        boolean copyAllowed = streamCopyEnabled && (!trimming || trimMode == TrimMode.FAST);
 
         List<String> command = new ArrayList<>();
         command.add(ffmpegExecutable.getAbsolutePath());
-        command.add("-i");
-        command.add(inputFile.getAbsolutePath());
-        command.add("-y"); // Overwrite output file if it exists
+        for (File inputFile : inputFiles) {
+            addClipInput(command, inputFile, clipStart, clipEnd);
+        }
+        command.add("-y");
+        List<File> outputFiles = new ArrayList<>();
+        for (int i = 0; i < inputFiles.size(); i++) {
+            File inputFile = inputFiles.get(i);
+            File outputDir = outputDirs.get(i);
+            MediaFiles.createOutputDir(outputDir);
+            File outputFile = getOutputFile(inputFile, outputFormat, outputDir, false);
+            outputFiles.add(outputFile);
+            MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+            StreamCopyPlan plan = (copyAllowed && probe != null) ? StreamCopyPlan.forFormat(probe, outputFormat) : StreamCopyPlan.transcodeAll();
+            if (StreamCopyPlan.holdsVideo(outputFormat)) {
+                command.add("-map");
+                command.add(i + ":v:0?");
+            }
+            command.add("-map");
+            command.add(i + ":a:0?");
+            plan.addCodecArguments(command);
+            if (clipStart > 0 && plan.copiesAnything()) {
+                command.add("-avoid_negative_ts");
+                command.add("make_zero");
+            }
+            if (threads > 0) {
+                // The encoders run side by side, so they share the thread budget
+                command.add("-threads");
+                command.add(String.valueOf(Math.max(1, threads / inputFiles.size())));
+            }
+            command.add(outputFile.getAbsolutePath());
+        }
 
-        if (startTime != null && !startTime.isEmpty()) {
-            command.add("-ss");
-            command.add(startTime);
+        onProgress.accept("Converting " + inputFiles.size() + " videos in one ffmpeg process");
+        try {
+            runFfmpeg(command, -1, 0, 0, onProgress, null);
+        } catch (IOException e) {
+            // Outputs are written side by side, so none of them is known to be complete
+            for (File outputFile : outputFiles) {
+                Files.deleteIfExists(outputFile.toPath());
+            }
+            throw e;
         }
-        if (endTime != null && !endTime.isEmpty()) {
-            command.add("-to");
-            command.add(endTime);
+    }
+
+    /**
+     * @return The clip start and end in seconds, each 0 or less if not given.
+     */
+    private static double[] parseClip(String startTime, String endTime) throws IOException {
+        double clipStart = TimeCode.parseSeconds(startTime);
+        double clipEnd = TimeCode.parseSeconds(endTime);
+        if (clipStart < 0 && startTime != null && !startTime.isBlank()) {
+            throw new IOException("Invalid start time: " + startTime);
         }
+        if (clipEnd < 0 && endTime != null && !endTime.isBlank()) {
+            throw new IOException("Invalid end time: " + endTime);
+        }
+        if (clipEnd > 0 && clipEnd <= Math.max(0, clipStart)) {
+            throw new IOException("End time " + endTime + " is not after start time " + startTime);
+        }
+        return new double[]{clipStart, clipEnd};
+    }
 
-        if (createGif) {
-            command.add("-vf");
-            command.add("fps=10,scale=320:-1:flags=lanczos");
+    private void runFfmpeg(List<String> command, double inputDuration, double clipStart, double clipEnd, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        onProgress.accept("Executing command: " + String.join(" ", command));
+        FfmpegRunner.run(command, inputDuration, clipStart, clipEnd, onProgress, onStatus);
+    }
+
+    /**
+     * Decodes the clip once and creates the GIF in a single filter graph, see {@link #addGifFilter}.
+     */
+    private void convertGif(File ffmpegExecutable, File inputFile, File outputFile, double clipStart, double clipEnd, int threads, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        File palette = (paletteCache() != null) ? paletteCache().paletteFile(inputFile, clipStart, clipEnd) : null;
+        boolean paletteCached = palette != null && palette.isFile();
+
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegExecutable.getAbsolutePath());
+        addClipInput(command, inputFile, clipStart, clipEnd);
+        if (paletteCached) {
+            onProgress.accept("Using cached palette for " + inputFile.getName());
+            command.add("-i");
+            command.add(palette.getAbsolutePath());
         }
+        command.add("-y");
+        File temporaryPalette = addGifFilter(command, palette, paletteCached);
 
+        command.add("-map");
+        command.add("[gif]");
+        if (threads > 0) {
+            command.add("-threads");
+            command.add(String.valueOf(threads));
+        }
         command.add(outputFile.getAbsolutePath());
+        addPaletteOutput(command, temporaryPalette);
+        MediaProbe probe = MediaProbeCache.shared().getIfCurrent(inputFile);
+        runWithPalette(command, (probe != null) ? probe.durationSeconds : -1, clipStart, clipEnd, palette, temporaryPalette, onProgress, onStatus);
+    }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
+    /**
+     * Adds the input, with the clip range as input options so every output and the palette
+     * analysis stop at the end of the clip.
+     */
+    private static void addClipInput(List<String> command, File inputFile, double clipStart, double clipEnd) {
+        if (clipStart > 0) {
+            command.add("-ss");
+            command.add(seconds(clipStart));
+        }
+        if (clipEnd > 0) {
+            command.add("-t");
+            command.add(seconds(clipEnd - Math.max(0, clipStart)));
+        }
+        command.add("-i");
+        command.add(inputFile.getAbsolutePath());
+    }
 
-        onProgress.accept("Starting conversion for: " + inputFile.getName());
-        onProgress.accept("Executing command: " + String.join(" ", command));
+    /**
+     * Adds a filter graph that turns the video of input 0 into GIF frames labelled {@code [gif]}.
+     * <p>
+     * Without a cached palette, the frames are split between palettegen, which analyses them at a
+     * fixed rate and size, and paletteuse, which waits for the palette and maps the frames to it; the
+     * palette is also labelled {@code [keep]} to be written to the cache. With a cached palette, which
+     * must have been added as input 1, only paletteuse runs.
+     *
+     * @param palette The palette's place in the cache, or {@code null} without a cache.
+     * @return The file to write {@code [keep]} to, or {@code null} if the palette is not to be stored.
+     */
+    private File addGifFilter(List<String> command, File palette, boolean paletteCached) {
+        String frames = "fps=" + gifOptions.fps + ((gifOptions.width > 0) ? ",scale=" + gifOptions.width + ":-1:flags=lanczos" : "");
+        String paletteUse = "paletteuse=dither=" + gifOptions.dither.filterValue;
+        if (paletteCached) {
+            paletteCache().touch(palette);
+            command.add("-filter_complex");
+            command.add("[0:v]" + frames + "[frames];[frames][1:v]" + paletteUse + "[gif]");
+            return null;
+        }
+        String analysis = "fps=" + GifPaletteCache.ANALYSIS_FPS + ",scale=" + GifPaletteCache.ANALYSIS_WIDTH + ":-1:flags=lanczos,palettegen";
+        command.add("-filter_complex");
+        command.add("[0:v]split[analysis][source];[analysis]" + analysis + ((palette != null) ? ",split[palette][keep]" : "[palette]") + ";"
+                + "[source]" + frames + "[frames];[frames][palette]" + paletteUse + "[gif]");
+        return (palette != null) ? paletteCache().temporaryFile(palette) : null;
+    }
 
-        Process process = processBuilder.start();
+    private static void addPaletteOutput(List<String> command, File temporaryPalette) {
+        if (temporaryPalette != null) {
+            command.add("-map");
+            command.add("[keep]");
+            command.add("-update");
+            command.add("1");
+            command.add(temporaryPalette.getAbsolutePath());
+        }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                onProgress.accept(line);
+    // Runs the command and moves a newly generated palette into the cache
+    private void runWithPalette(List<String> command, double inputDuration, double clipStart, double clipEnd, File palette, File temporaryPalette, Consumer<String> onProgress, Consumer<FfmpegProgress> onStatus) throws IOException, InterruptedException {
+        try {
+            runFfmpeg(command, inputDuration, clipStart, clipEnd, onProgress, onStatus);
+            if (temporaryPalette != null && temporaryPalette.isFile()) {
+                Files.move(temporaryPalette.toPath(), palette.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                paletteCache().prune();
+            }
+        } finally {
+            if (temporaryPalette != null) {
+                Files.deleteIfExists(temporaryPalette.toPath());
             }
         }
+    }
 
-        int exitCode = process.waitFor();
+    /**
+     * @param clipStart Where the clip starts in seconds, or a value of 0 or less for the beginning.
+     * @param clipEnd   Where the clip ends in seconds, or a value of 0 or less for the end of the input.
+     */
+    private List<String> buildCommand(File ffmpegExecutable, File inputFile, File outputFile, double clipStart, double clipEnd, int threads, StreamCopyPlan plan) {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegExecutable.getAbsolutePath());
+
+        // Seeking before -i jumps to the keyframe before the start. When re-encoding, ffmpeg decodes
+        // from there and drops the frames before the exact start; copied streams start on that keyframe.
+        if (clipStart > 0) {
+            command.add("-ss");
+            command.add(seconds(clipStart));
+        }
+        command.add("-i");
+        command.add(inputFile.getAbsolutePath());
+        command.add("-y"); // Overwrite output file if it exists
 
-        if (exitCode == 0) {
-            onProgress.accept("Conversion finished successfully!");
-        } else {
-            onProgress.accept("Conversion failed with exit code: " + exitCode);
+        // Timestamps restart at zero after an input seek, so the end is given as a duration
+        if (clipEnd > 0) {
+            command.add("-t");
+            command.add(seconds(clipEnd - Math.max(0, clipStart)));
         }
+        if (clipStart > 0 && plan.copiesAnything()) {
+            // Copied packets from before the start would otherwise get negative timestamps
+            command.add("-avoid_negative_ts");
+            command.add("make_zero");
+        }
+
+        plan.addCodecArguments(command);
+
+        if (threads > 0) {
+            command.add("-threads");
+            command.add(String.valueOf(threads));
+        }
+
+        command.add(outputFile.getAbsolutePath());
+        return command;
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * @return The files {@link #convertToFormats} writes, in the order of {@code formats}.
+     */
+    public List<File> getOutputFiles(File inputFile, List<String> formats, File outputDir) {
+        List<File> outputFiles = new ArrayList<>();
+        for (String format : formats) {
+            outputFiles.add(getOutputFile(inputFile, format, outputDir, format.equals(GIF_FORMAT)));
+        }
+        return outputFiles;
+    }
+
+    /**
+     * @return The file {@link #convert} writes for the given input.
+     */
+    public File getOutputFile(File inputFile, String outputFormat, File outputDir, boolean createGif) {
+        String fileName = inputFile.getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        String nameWithoutExtension = (dotIndex == -1) ? fileName : fileName.substring(0, dotIndex);
+        return new File(outputDir, nameWithoutExtension + "." + (createGif ? "gif" : outputFormat));
     }
 }